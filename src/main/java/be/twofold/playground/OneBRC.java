@@ -1,121 +1,302 @@
 package be.twofold.playground;
 
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
 import java.util.stream.*;
 
 public class OneBRC {
     private static final String FILE = "D:\\measurements.txt";
-
-    public static void main(String[] args) throws IOException {
+    private static final long MAX_MAPPING_SIZE = 1L << 30;
+    private static final boolean SCALAR = Boolean.getBoolean("onebrc.scalar");
+    private static final boolean EXTENDED = Boolean.getBoolean("onebrc.extended");
+    private static final String SNAPSHOT = System.getProperty("onebrc.snapshot");
+    private static final int THREADS = Integer.getInteger("onebrc.threads", Runtime.getRuntime().availableProcessors());
+    private static final long CHUNK_SIZE = Long.getLong("onebrc.chunkSize", 4L << 20);
+    private static final int SNAPSHOT_MAGIC = 0x4F425243;
+    private static final int SNAPSHOT_VERSION = 2;
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
         long startTime = System.currentTimeMillis();
 
-        int numProcessors = Runtime.getRuntime().availableProcessors() - 2;
-        long[] offsets = new long[numProcessors + 1];
-
         var measurements = new HashMap<ByteArray, Statistics>();
         try (var input = new RandomAccessFile(FILE, "r")) {
-            offsets[numProcessors] = input.length();
-            long chunkSize = input.length() / numProcessors;
-
-            byte[] buffer = new byte[256];
-            for (int i = 1; i < numProcessors; i++) {
-                long position = i * chunkSize;
-                input.seek(position);
-                input.read(buffer);
-                int index = indexOf(buffer, 0, (byte) '\n');
-                offsets[i] = position + index + 1;
+            long start = 0;
+            long end = input.length();
+            if (SNAPSHOT != null) {
+                start = readSnapshot(Path.of(SNAPSHOT), end, measurements);
+                end = lastLineEnd(input, start);
             }
-
-            try (var pool = Executors.newFixedThreadPool(numProcessors)) {
-                var futures = IntStream.range(0, numProcessors)
-                    .mapToObj(i -> pool.submit(() -> readFromFile(input, offsets[i], offsets[i + 1])))
+            long[] offsets = chunks(input, start, end);
+
+            // Workers claim the next chunk until none are left, so a slow thread holds up at most one chunk
+            var channel = input.getChannel();
+            var cursor = new AtomicInteger();
+            try (var pool = Executors.newFixedThreadPool(THREADS)) {
+                var futures = IntStream.range(0, THREADS)
+                    .mapToObj(i -> pool.submit(() -> {
+                        var table = new StationTable();
+                        for (int chunk; (chunk = cursor.getAndIncrement()) < offsets.length - 1; ) {
+                            readFromMapping(channel, offsets[chunk], offsets[chunk + 1], table);
+                        }
+                        return table;
+                    }))
                     .toList();
 
+                // A failed chunk must not be recorded in the snapshot, or its rows would never be read again
                 for (var future : futures) {
-                    try {
-                        var result = future.get();
-                        result.forEach((k, v) -> measurements.merge(k, v, Statistics::combine));
-                    } catch (InterruptedException | ExecutionException e) {
-                        e.printStackTrace();
-                    }
+                    var result = future.get();
+                    result.forEach((k, v) -> measurements.merge(k, v, Statistics::combine));
                 }
             }
+
+            if (SNAPSHOT != null) {
+                writeSnapshot(Path.of(SNAPSHOT), end, measurements);
+            }
         }
 
         var result = new TreeMap<>(measurements);
-        result.forEach((k, v) -> System.out.println(k + " " + v));
+        result.forEach((k, v) -> System.out.println(k + " " + (EXTENDED ? v.toExtendedString() : v)));
 
         System.out.println("Elapsed time: " + (System.currentTimeMillis() - startTime) + "ms");
     }
 
-    private static Map<ByteArray, Statistics> readFromFile(RandomAccessFile input, long fromIndex, long toIndex) throws IOException {
+    private static long[] chunks(RandomAccessFile input, long start, long end) throws IOException {
+        int count = (int) Math.max(1, (end - start + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        long[] offsets = new long[count + 1];
+        offsets[0] = start;
+        offsets[count] = end;
+
+        byte[] buffer = new byte[256];
+        for (int i = 1; i < count; i++) {
+            long position = start + i * CHUNK_SIZE;
+            input.seek(position);
+            input.read(buffer);
+            int index = indexOf(buffer, 0, (byte) '\n');
+            offsets[i] = index == -1 ? end : Math.min(position + index + 1, end);
+        }
+        return offsets;
+    }
+
+    // Only complete lines are processed, a line that is still being appended is left for the next run
+    private static long lastLineEnd(RandomAccessFile input, long start) throws IOException {
+        byte[] buffer = new byte[256];
+        for (long end = input.length(); end > start; ) {
+            long position = Math.max(start, end - buffer.length);
+            input.seek(position);
+            input.readFully(buffer, 0, (int) (end - position));
+            for (int i = (int) (end - position) - 1; i >= 0; i--) {
+                if (buffer[i] == '\n') {
+                    return position + i + 1;
+                }
+            }
+            end = position;
+        }
+        return start;
+    }
+
+    private static long readSnapshot(Path path, long length, Map<ByteArray, Statistics> measurements) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a snapshot: " + path);
+            }
+            int version = input.readInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported snapshot version: " + version);
+            }
+            long offset = input.readLong();
+            if (offset > length) {
+                // The file was truncated or replaced, so start over
+                return 0;
+            }
+            int size = input.readInt();
+            for (int i = 0; i < size; i++) {
+                byte[] name = new byte[input.readUnsignedShort()];
+                input.readFully(name);
+                long count = input.readLong();
+                long sum = input.readLong();
+                long sumOfSquares = input.readLong();
+                long min = input.readLong();
+                long max = input.readLong();
+
+                // Histograms are stored sparse, most stations only see a fraction of the range
+                int[] histogram = new int[Statistics.HISTOGRAM_SIZE];
+                for (int buckets = input.readUnsignedShort(); buckets > 0; buckets--) {
+                    histogram[input.readUnsignedShort()] = input.readInt();
+                }
+                var statistics = new Statistics(count, sum, sumOfSquares, min, max, histogram);
+                measurements.put(new ByteArray(name), statistics);
+            }
+            return offset;
+        }
+    }
+
+    private static void writeSnapshot(Path path, long offset, Map<ByteArray, Statistics> measurements) throws IOException {
+        var temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            output.writeInt(SNAPSHOT_MAGIC);
+            output.writeInt(SNAPSHOT_VERSION);
+            output.writeLong(offset);
+            output.writeInt(measurements.size());
+            for (var entry : measurements.entrySet()) {
+                byte[] name = entry.getKey().array;
+                output.writeShort(name.length);
+                output.write(name);
+                var statistics = entry.getValue();
+                output.writeLong(statistics.count);
+                output.writeLong(statistics.sum);
+                output.writeLong(statistics.sumOfSquares);
+                output.writeLong(statistics.min);
+                output.writeLong(statistics.max);
+
+                int[] histogram = statistics.histogram;
+                output.writeShort((int) Arrays.stream(histogram).filter(i -> i != 0).count());
+                for (int i = 0; i < histogram.length; i++) {
+                    if (histogram[i] != 0) {
+                        output.writeShort(i);
+                        output.writeInt(histogram[i]);
+                    }
+                }
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // A single mapping can't exceed 2 GiB, so larger chunks are mapped in windows ending on a newline
+    private static void readFromMapping(FileChannel channel, long fromIndex, long toIndex, StationTable measurements) throws IOException {
         long filePos = fromIndex;
-        int offset = 0;
-        byte[] buffer = new byte[64 * 1024];
-        var measurements = new HashMap<ByteArray, Statistics>();
+        while (filePos < toIndex) {
+            long size = Math.min(toIndex - filePos, MAX_MAPPING_SIZE);
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, filePos, size).order(ByteOrder.LITTLE_ENDIAN);
+
+            int limit = (int) size;
+            if (filePos + size < toIndex) {
+                limit = lastIndexOf(buffer, limit, (byte) '\n') + 1;
+            }
+
+            int offset = 0;
+            while (offset < limit) {
+                offset = SCALAR
+                    ? parseLineScalar(buffer, offset, limit, measurements)
+                    : parseLine(buffer, offset, measurements);
+            }
+            filePos += limit;
+        }
+    }
+
+    // Scans for the semicolon a word at a time, the buffer has to be little endian.
+    // The hash differs from the scalar version, so don't mix both on the same table.
+    static int parseLine(ByteBuffer buffer, int offset, StationTable measurements) {
+        int hash = 0;
+        int semiColonIndex = offset;
         while (true) {
-            if (filePos >= toIndex) {
-                return measurements;
-            }
-            int toRead = (int) Math.min(buffer.length - offset, toIndex - filePos);
-            synchronized (input) {
-                input.seek(filePos);
-                input.read(buffer, offset, toRead);
-            }
-            filePos += toRead;
-
-            offset = 0;
-            while (true) {
-                int endOfLine = parseLine(buffer, offset, measurements);
-                if (endOfLine == -1) {
-                    int left = buffer.length - offset;
-                    System.arraycopy(buffer, offset, buffer, 0, left);
-                    offset = left;
-                    break;
-                } else {
-                    offset = endOfLine;
-                }
+            long word = getLong(buffer, semiColonIndex);
+            long match = semicolons(word);
+            if (match != 0) {
+                int index = Long.numberOfTrailingZeros(match) >>> 3;
+                hash = hash(hash, word & ((1L << (index << 3)) - 1));
+                semiColonIndex += index;
+                break;
             }
+            hash = hash(hash, word);
+            semiColonIndex += Long.BYTES;
+        }
+
+        long word = getLong(buffer, semiColonIndex + 1);
+        int decimalSeparator = Long.numberOfTrailingZeros(~word & 0x10101000L);
+        measurements.add(buffer, offset, semiColonIndex - offset, hash, parseTemperature(word, decimalSeparator));
+
+        return semiColonIndex + (decimalSeparator >>> 3) + 4;
+    }
+
+    private static long semicolons(long word) {
+        long input = word ^ 0x3B3B3B3B3B3B3B3BL;
+        return (input - 0x0101010101010101L) & ~input & 0x8080808080808080L;
+    }
+
+    private static int hash(int hash, long word) {
+        return 31 * hash + (int) (word ^ (word >>> 32));
+    }
+
+    // Decodes -?\d?\d\.\d without branches. The decimal separator is the only byte with bit 4
+    // cleared, which gives the shift that lines up the digits for a single multiply.
+    private static long parseTemperature(long word, int decimalSeparator) {
+        long signed = (~word << 59) >> 63;
+        long designMask = ~(signed & 0xFF);
+        long digits = ((word & designMask) << (28 - decimalSeparator)) & 0x0F000F0F00L;
+        long absValue = ((digits * 0x640A0001L) >>> 32) & 0x3FF;
+        return (absValue ^ signed) - signed;
+    }
+
+    private static long getLong(ByteBuffer buffer, int index) {
+        if (index + Long.BYTES <= buffer.limit()) {
+            return buffer.getLong(index);
         }
+        long word = 0;
+        for (int i = buffer.limit() - 1; i >= index; i--) {
+            word = word << 8 | (buffer.get(i) & 0xFF);
+        }
+        return word;
     }
 
-    private static int parseLine(byte[] buffer, int offset, Map<ByteArray, Statistics> measurements) {
-        int semiColonIndex = indexOf(buffer, offset + 1, (byte) ';');
-        if (semiColonIndex == -1) {
-            return -1;
+    static int parseLineScalar(ByteBuffer buffer, int offset, int limit, StationTable measurements) {
+        int hash = 0;
+        int semiColonIndex = offset;
+        for (byte b; (b = buffer.get(semiColonIndex)) != ';'; semiColonIndex++) {
+            hash = 31 * hash + b;
         }
 
-        int newLineIndex = indexOf(buffer, semiColonIndex + 1, (byte) '\n');
+        int newLineIndex = indexOf(buffer, semiColonIndex + 1, limit, (byte) '\n');
         if (newLineIndex == -1) {
-            return -1;
+            newLineIndex = limit;
         }
 
-        var city = new ByteArray(Arrays.copyOfRange(buffer, offset, semiColonIndex));
         var value = parseLong(buffer, semiColonIndex + 1, newLineIndex - semiColonIndex - 1);
-//        longs.add(value);
-        measurements
-            .computeIfAbsent(city, $ -> new Statistics())
-            .accept(value);
+        measurements.add(buffer, offset, semiColonIndex - offset, hash, value);
 
         return newLineIndex + 1;
     }
 
-    private static long parseLong(byte[] buffer, int fromIndex, int length) {
-        if (buffer[fromIndex] == '-') {
+    private static long parseLong(ByteBuffer buffer, int fromIndex, int length) {
+        if (buffer.get(fromIndex) == '-') {
             return -parseLong(buffer, fromIndex + 1, length - 1);
         }
         long result = 0;
         for (int i = fromIndex, limit = fromIndex + length; i < limit; i++) {
-            if (buffer[i] == '.') {
-                return result * 10 + buffer[i + 1] - '0';
+            if (buffer.get(i) == '.') {
+                return result * 10 + buffer.get(i + 1) - '0';
             }
-            result = result * 10 + buffer[i] - '0';
+            result = result * 10 + buffer.get(i) - '0';
         }
         return result;
     }
 
+    private static int indexOf(ByteBuffer buffer, int start, int limit, byte value) {
+        for (int i = start; i < limit; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(ByteBuffer buffer, int limit, byte value) {
+        for (int i = limit - 1; i >= 0; i--) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     private static int indexOf(byte[] array, int start, byte value) {
         for (int i = start; i < array.length; i++) {
             if (array[i] == value) {
@@ -125,6 +306,126 @@ public class OneBRC {
         return -1;
     }
 
+    /**
+     * Open addressing table from station name to statistics. Lookups compare against the name in the
+     * input buffer, so the name is only copied the first time a station is seen.
+     */
+    static final class StationTable {
+        private static final int INITIAL_CAPACITY = 1 << 14;
+
+        private byte[][] names = new byte[INITIAL_CAPACITY][];
+        private int[] hashes = new int[INITIAL_CAPACITY];
+        private long[] counts = new long[INITIAL_CAPACITY];
+        private long[] sums = new long[INITIAL_CAPACITY];
+        private long[] sumsOfSquares = new long[INITIAL_CAPACITY];
+        private long[] mins = new long[INITIAL_CAPACITY];
+        private long[] maxs = new long[INITIAL_CAPACITY];
+        private int[][] histograms = new int[INITIAL_CAPACITY][];
+        private int size;
+
+        void add(ByteBuffer buffer, int offset, int length, int hash, long value) {
+            int mask = names.length - 1;
+            for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+                byte[] name = names[slot];
+                if (name == null) {
+                    insert(slot, buffer, offset, length, hash, value);
+                    return;
+                }
+                if (hashes[slot] == hash && equals(name, buffer, offset, length)) {
+                    counts[slot]++;
+                    sums[slot] += value;
+                    sumsOfSquares[slot] += value * value;
+                    mins[slot] = Math.min(mins[slot], value);
+                    maxs[slot] = Math.max(maxs[slot], value);
+                    histograms[slot][(int) value + Statistics.HISTOGRAM_OFFSET]++;
+                    return;
+                }
+            }
+        }
+
+        void forEach(BiConsumer<ByteArray, Statistics> action) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i] != null) {
+                    action.accept(new ByteArray(names[i]), new Statistics(counts[i], sums[i], sumsOfSquares[i], mins[i], maxs[i], histograms[i]));
+                }
+            }
+        }
+
+        private void insert(int slot, ByteBuffer buffer, int offset, int length, int hash, long value) {
+            byte[] name = new byte[length];
+            buffer.get(offset, name);
+            names[slot] = name;
+            hashes[slot] = hash;
+            counts[slot] = 1;
+            sums[slot] = value;
+            sumsOfSquares[slot] = value * value;
+            mins[slot] = value;
+            maxs[slot] = value;
+            histograms[slot] = new int[Statistics.HISTOGRAM_SIZE];
+            histograms[slot][(int) value + Statistics.HISTOGRAM_OFFSET] = 1;
+
+            if (++size * 2 > names.length) {
+                resize();
+            }
+        }
+
+        private void resize() {
+            var oldNames = names;
+            var oldHashes = hashes;
+            var oldCounts = counts;
+            var oldSums = sums;
+            var oldSumsOfSquares = sumsOfSquares;
+            var oldMins = mins;
+            var oldMaxs = maxs;
+            var oldHistograms = histograms;
+
+            int capacity = oldNames.length * 2;
+            names = new byte[capacity][];
+            hashes = new int[capacity];
+            counts = new long[capacity];
+            sums = new long[capacity];
+            sumsOfSquares = new long[capacity];
+            mins = new long[capacity];
+            maxs = new long[capacity];
+            histograms = new int[capacity][];
+
+            int mask = capacity - 1;
+            for (int i = 0; i < oldNames.length; i++) {
+                if (oldNames[i] == null) {
+                    continue;
+                }
+                int slot = mix(oldHashes[i]) & mask;
+                while (names[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                names[slot] = oldNames[i];
+                hashes[slot] = oldHashes[i];
+                counts[slot] = oldCounts[i];
+                sums[slot] = oldSums[i];
+                sumsOfSquares[slot] = oldSumsOfSquares[i];
+                mins[slot] = oldMins[i];
+                maxs[slot] = oldMaxs[i];
+                histograms[slot] = oldHistograms[i];
+            }
+        }
+
+        private static boolean equals(byte[] name, ByteBuffer buffer, int offset, int length) {
+            if (name.length != length) {
+                return false;
+            }
+            for (int i = 0; i < name.length; i++) {
+                if (name[i] != buffer.get(offset + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
     static final class ByteArray implements Comparable<ByteArray> {
         private final byte[] array;
 
@@ -155,35 +456,51 @@ public class OneBRC {
     }
 
     static final class Statistics {
+        // Temperatures are tenths in [-99.9, 99.9], so every possible value gets its own bucket
+        static final int HISTOGRAM_OFFSET = 999;
+        static final int HISTOGRAM_SIZE = 2 * HISTOGRAM_OFFSET + 1;
+
         private long count;
         private long sum;
+        private long sumOfSquares;
         private long min;
         private long max;
+        private final int[] histogram;
 
         Statistics() {
-            this(0, 0, Long.MAX_VALUE, Long.MIN_VALUE);
+            this(0, 0, 0, Long.MAX_VALUE, Long.MIN_VALUE, new int[HISTOGRAM_SIZE]);
         }
 
-        Statistics(long count, long sum, long min, long max) {
+        Statistics(long count, long sum, long sumOfSquares, long min, long max, int[] histogram) {
             this.count = count;
             this.sum = sum;
+            this.sumOfSquares = sumOfSquares;
             this.min = min;
             this.max = max;
+            this.histogram = histogram;
         }
 
         void accept(long value) {
             count++;
             sum += value;
+            sumOfSquares += value * value;
             min = Math.min(min, value);
             max = Math.max(max, value);
+            histogram[(int) value + HISTOGRAM_OFFSET]++;
         }
 
         Statistics combine(Statistics other) {
+            int[] combined = histogram.clone();
+            for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+                combined[i] += other.histogram[i];
+            }
             return new Statistics(
                 count + other.count,
                 sum + other.sum,
+                sumOfSquares + other.sumOfSquares,
                 Math.min(min, other.min),
-                Math.max(max, other.max)
+                Math.max(max, other.max),
+                combined
             );
         }
 
@@ -199,6 +516,34 @@ public class OneBRC {
             return (double) sum / (double) count;
         }
 
+        double getStandardDeviation() {
+            double mean = getMean();
+            return Math.sqrt(Math.max(0, (double) sumOfSquares / (double) count - mean * mean));
+        }
+
+        // Nearest-rank percentile, walks the histogram until the rank is reached
+        long getPercentile(double percentile) {
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+                seen += histogram[i];
+                if (seen >= rank) {
+                    return i - HISTOGRAM_OFFSET;
+                }
+            }
+            return max;
+        }
+
+        String toExtendedString() {
+            return String.format("%s p50=%.1f p95=%.1f p99=%.1f stddev=%.2f",
+                this,
+                getPercentile(50) / 10.0,
+                getPercentile(95) / 10.0,
+                getPercentile(99) / 10.0,
+                getStandardDeviation() / 10.0
+            );
+        }
+
         @Override
         public String toString() {
             return String.format("%.1f/%.1f/%.1f",
@@ -5,8 +5,6 @@ import be.twofold.playground.common.*;
 import java.io.*;
 
 final class Base16Encoding extends StandardBaseEncoding {
-    final char[] encoding = new char[512];
-
     Base16Encoding(String alphabetChars) {
         this(new Alphabet(alphabetChars.toCharArray()));
     }
@@ -14,10 +12,6 @@ final class Base16Encoding extends StandardBaseEncoding {
     Base16Encoding(Alphabet alphabet) {
         super(alphabet, null);
         Check.argument(alphabet.chars.length == 16);
-        for (int i = 0; i < 256; ++i) {
-            encoding[i] = alphabet.encode(i >>> 4);
-            encoding[i | 0x100] = alphabet.encode(i & 0xF);
-        }
     }
 
     @Override
@@ -25,10 +19,21 @@ final class Base16Encoding extends StandardBaseEncoding {
         Check.notNull(target);
         Check.fromToIndex(off, off + len, bytes.length);
         for (int i = 0; i < len; ++i) {
-            int b = bytes[off + i] & 0xFF;
-            target.append(encoding[b]);
-            target.append(encoding[b | 0x100]);
+            int b = (bytes[off + i] & 0xFF) << 1;
+            target.append(pairs[b]);
+            target.append(pairs[b + 1]);
+        }
+    }
+
+    @Override
+    int encodeTo(char[] target, int targetOff, byte[] bytes, int off, int len) {
+        Check.fromToIndex(off, off + len, bytes.length);
+        for (int i = 0; i < len; ++i) {
+            int b = (bytes[off + i] & 0xFF) << 1;
+            target[targetOff + 2 * i] = pairs[b];
+            target[targetOff + 2 * i + 1] = pairs[b + 1];
         }
+        return targetOff + 2 * len;
     }
 
     @Override
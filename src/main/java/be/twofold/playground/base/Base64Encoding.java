@@ -31,6 +31,24 @@ final class Base64Encoding extends StandardBaseEncoding {
         }
     }
 
+    @Override
+    int encodeTo(char[] target, int targetOff, byte[] bytes, int off, int len) {
+        Check.fromToIndex(off, off + len, bytes.length);
+        int t = targetOff;
+        int end = off + len - len % 3;
+        for (int i = off; i < end; i += 3) {
+            int chunk = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | bytes[i + 2] & 0xFF;
+            int high = (chunk >>> 12) << 1;
+            int low = (chunk & 0xFFF) << 1;
+            target[t] = pairs[high];
+            target[t + 1] = pairs[high + 1];
+            target[t + 2] = pairs[low];
+            target[t + 3] = pairs[low + 1];
+            t += 4;
+        }
+        return encodeChunkTo(target, t, bytes, end, off + len - end);
+    }
+
     @Override
     int decodeTo(byte[] target, CharSequence chars) throws DecodingException {
         Check.notNull(target);
@@ -3,6 +3,8 @@ package be.twofold.playground.base;
 import be.twofold.playground.common.*;
 
 import java.io.*;
+import java.nio.channels.*;
+import java.util.*;
 
 public abstract class BaseEncoding {
 
@@ -50,13 +52,87 @@ public abstract class BaseEncoding {
 
     public final String encode(byte[] bytes, int off, int len) {
         Check.fromToIndex(off, off + len, bytes.length);
-        StringBuilder result = new StringBuilder(maxEncodedSize(len));
-        try {
-            encodeTo(result, bytes, off, len);
-        } catch (IOException impossible) {
-            throw new AssertionError(impossible);
-        }
-        return result.toString();
+        char[] result = new char[maxEncodedSize(len)];
+        return new String(result, 0, encodeTo(result, 0, bytes, off, len));
+    }
+
+    public final char[] encodeToChars(byte[] bytes) {
+        return encodeToChars(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Encodes the bytes into a new char array, without going through an {@link Appendable}.
+     */
+    public final char[] encodeToChars(byte[] bytes, int off, int len) {
+        Check.fromToIndex(off, off + len, bytes.length);
+        char[] result = new char[maxEncodedSize(len)];
+        int length = encodeTo(result, 0, bytes, off, len);
+        return length == result.length ? result : Arrays.copyOf(result, length);
+    }
+
+    public final byte[] encodeToBytes(byte[] bytes) {
+        return encodeToBytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Encodes the bytes into a new array of ASCII characters, without going through an
+     * {@link Appendable}.
+     *
+     * @throws IllegalStateException if the padding character is not ASCII
+     */
+    public final byte[] encodeToBytes(byte[] bytes, int off, int len) {
+        Check.fromToIndex(off, off + len, bytes.length);
+        byte[] result = new byte[maxEncodedSize(len)];
+        return extract(result, encodeTo(result, 0, bytes, off, len));
+    }
+
+    /**
+     * Returns a stream that encodes the bytes written to it, and writes the ASCII characters to
+     * {@code out}. Only whole chunks are written until the stream is closed, which writes the last
+     * chunk with its padding, and closes {@code out}.
+     *
+     * <p>The stream uses a fixed amount of memory, however much is written to it.
+     *
+     * @throws IllegalStateException if the padding character is not ASCII
+     */
+    public final OutputStream encodingStream(OutputStream out) {
+        Check.notNull(out);
+        return new EncodingOutputStream(this, out);
+    }
+
+    /**
+     * Returns a stream that reads ASCII characters from {@code in}, and decodes them. Padding is
+     * only allowed at the end of the input. Malformed input is reported with a
+     * {@link DecodingException} when the stream gets to it.
+     *
+     * <p>The stream uses a fixed amount of memory, however much is read from it.
+     */
+    public final InputStream decodingStream(InputStream in) {
+        Check.notNull(in);
+        return new DecodingInputStream(this, in);
+    }
+
+    /**
+     * Returns a channel that reads bytes from a blocking {@code source}, and encodes them into
+     * ASCII characters.
+     *
+     * @throws IllegalStateException if the padding character is not ASCII
+     * @see #encodingStream(OutputStream)
+     */
+    public final ReadableByteChannel encodingChannel(ReadableByteChannel source) {
+        Check.notNull(source);
+        return new InputStreamChannel(new EncodingInputStream(this, Channels.newInputStream(source)));
+    }
+
+    /**
+     * Returns a channel that reads ASCII characters from a blocking {@code source}, and decodes
+     * them.
+     *
+     * @see #decodingStream(InputStream)
+     */
+    public final ReadableByteChannel decodingChannel(ReadableByteChannel source) {
+        Check.notNull(source);
+        return new InputStreamChannel(new DecodingInputStream(this, Channels.newInputStream(source)));
     }
 
     public abstract boolean canDecode(CharSequence chars);
@@ -81,8 +157,27 @@ public abstract class BaseEncoding {
 
     abstract void encodeTo(Appendable target, byte[] bytes, int off, int len) throws IOException;
 
+    /**
+     * Encodes the bytes into {@code target} from {@code targetOff}, and returns where the
+     * encoded chars end. The target has to have room for {@link #maxEncodedSize} chars.
+     */
+    abstract int encodeTo(char[] target, int targetOff, byte[] bytes, int off, int len);
+
+    abstract int encodeTo(byte[] target, int targetOff, byte[] bytes, int off, int len);
+
     abstract int maxDecodedSize(int chars);
 
+    abstract int bytesPerChunk();
+
+    abstract int charsPerChunk();
+
+    abstract Character padding();
+
+    /**
+     * Fails if encoding to bytes can't represent the padding character.
+     */
+    abstract void checkAsciiPadding();
+
     abstract int decodeTo(byte[] target, CharSequence chars) throws DecodingException;
 
     CharSequence trimTrailingPadding(CharSequence chars) {
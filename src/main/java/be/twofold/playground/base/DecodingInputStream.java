@@ -0,0 +1,176 @@
+package be.twofold.playground.base;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * Reads ASCII characters from another stream, and returns them decoded, a block of chunks at a
+ * time. The last partial chunk is decoded when the other stream ends.
+ *
+ * <p>Once a padding character comes in, only more padding can follow. It is dropped as it's
+ * read, so a long run of it doesn't take up the buffer.
+ */
+final class DecodingInputStream extends InputStream {
+    private static final int CHUNKS = 1024;
+
+    private final BaseEncoding encoding;
+    private final InputStream in;
+    private final int padding;
+
+    private final byte[] input;
+    private int inputLength;
+    private final Chars chars;
+    private final byte[] output;
+    private int outputPosition;
+    private int outputLength;
+    private boolean padded;
+    private boolean eof;
+    private boolean closed;
+
+    DecodingInputStream(BaseEncoding encoding, InputStream in) {
+        this.encoding = encoding;
+        this.in = in;
+        this.padding = encoding.padding() != null ? encoding.padding() : -1;
+        this.input = new byte[encoding.charsPerChunk() * CHUNKS];
+        this.chars = new Chars(input, 0);
+        this.output = new byte[encoding.maxDecodedSize(input.length)];
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (outputPosition == outputLength && !fill()) {
+            return -1;
+        }
+        return output[outputPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) {
+            return 0;
+        }
+        if (outputPosition == outputLength && !fill()) {
+            return -1;
+        }
+        int n = Math.min(len, outputLength - outputPosition);
+        System.arraycopy(output, outputPosition, b, off, n);
+        outputPosition += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return outputLength - outputPosition;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        in.close();
+    }
+
+    private boolean fill() throws IOException {
+        ensureOpen();
+        while (true) {
+            if (eof) {
+                if (inputLength == 0) {
+                    return false;
+                }
+                decode(inputLength);
+                if (outputLength > 0) {
+                    return true;
+                }
+                continue;
+            }
+            int n = in.read(input, inputLength, input.length - inputLength);
+            if (n < 0) {
+                eof = true;
+                continue;
+            }
+            inputLength = dropPadding(inputLength, inputLength + n);
+            int whole = inputLength - inputLength % encoding.charsPerChunk();
+            if (whole > 0) {
+                decode(whole);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Checks the characters that were just read for padding, and returns where the characters
+     * before it end.
+     */
+    private int dropPadding(int from, int to) throws DecodingException {
+        if (padding < 0) {
+            return to;
+        }
+        int end = to;
+        for (int i = from; i < to; i++) {
+            if ((input[i] & 0xFF) == padding) {
+                if (!padded) {
+                    padded = true;
+                    end = i;
+                }
+            } else if (padded) {
+                throw new DecodingException("Unexpected character after padding: 0x" + Integer.toHexString(input[i] & 0xFF));
+            }
+        }
+        return end;
+    }
+
+    private void decode(int length) throws DecodingException {
+        chars.length = length;
+        outputLength = encoding.decodeTo(output, chars);
+        outputPosition = 0;
+        System.arraycopy(input, length, input, 0, inputLength - length);
+        inputLength -= length;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * The ASCII characters at the start of the input buffer, without copying them to a string.
+     */
+    private static final class Chars implements CharSequence {
+        private final byte[] bytes;
+        private int length;
+
+        Chars(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            Objects.checkIndex(index, length);
+            return (char) (bytes[index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            Objects.checkFromToIndex(start, end, length);
+            // Decoding only ever trims the end
+            if (start != 0) {
+                throw new UnsupportedOperationException();
+            }
+            return new Chars(bytes, end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
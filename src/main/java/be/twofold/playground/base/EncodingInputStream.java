@@ -0,0 +1,103 @@
+package be.twofold.playground.base;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Reads bytes from another stream, and returns them encoded, a block of chunks at a time. The
+ * last partial chunk is encoded with its padding when the other stream ends.
+ */
+final class EncodingInputStream extends InputStream {
+    private static final int CHUNKS = 1024;
+
+    private final BaseEncoding encoding;
+    private final InputStream in;
+
+    private final byte[] input;
+    private int inputLength;
+    private final byte[] output;
+    private int outputPosition;
+    private int outputLength;
+    private boolean eof;
+    private boolean closed;
+
+    EncodingInputStream(BaseEncoding encoding, InputStream in) {
+        encoding.checkAsciiPadding();
+        this.encoding = encoding;
+        this.in = in;
+        this.input = new byte[encoding.bytesPerChunk() * CHUNKS];
+        this.output = new byte[encoding.maxEncodedSize(input.length)];
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (outputPosition == outputLength && !fill()) {
+            return -1;
+        }
+        return output[outputPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) {
+            return 0;
+        }
+        if (outputPosition == outputLength && !fill()) {
+            return -1;
+        }
+        int n = Math.min(len, outputLength - outputPosition);
+        System.arraycopy(output, outputPosition, b, off, n);
+        outputPosition += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return outputLength - outputPosition;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        in.close();
+    }
+
+    private boolean fill() throws IOException {
+        ensureOpen();
+        while (true) {
+            if (eof) {
+                if (inputLength == 0) {
+                    return false;
+                }
+                encode(inputLength);
+                return true;
+            }
+            int n = in.read(input, inputLength, input.length - inputLength);
+            if (n < 0) {
+                eof = true;
+                continue;
+            }
+            inputLength += n;
+            int whole = inputLength - inputLength % encoding.bytesPerChunk();
+            if (whole > 0) {
+                encode(whole);
+                return true;
+            }
+        }
+    }
+
+    private void encode(int length) {
+        outputLength = encoding.encodeTo(output, 0, input, 0, length);
+        outputPosition = 0;
+        System.arraycopy(input, length, input, 0, inputLength - length);
+        inputLength -= length;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
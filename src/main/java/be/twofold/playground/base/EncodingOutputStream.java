@@ -0,0 +1,101 @@
+package be.twofold.playground.base;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Encodes what is written to it a block of chunks at a time, holding on to a partial chunk until
+ * more bytes come in, or the stream is closed.
+ */
+final class EncodingOutputStream extends OutputStream {
+    private static final int CHUNKS = 1024;
+
+    private final BaseEncoding encoding;
+    private final OutputStream out;
+
+    private final byte[] input;
+    private int inputLength;
+    private final byte[] output;
+    private boolean closed;
+
+    EncodingOutputStream(BaseEncoding encoding, OutputStream out) {
+        encoding.checkAsciiPadding();
+        this.encoding = encoding;
+        this.out = out;
+        this.input = new byte[encoding.bytesPerChunk() * CHUNKS];
+        this.output = new byte[encoding.maxEncodedSize(input.length)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        input[inputLength++] = (byte) b;
+        if (inputLength == input.length) {
+            encode(input, 0, inputLength);
+            inputLength = 0;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        ensureOpen();
+        while (len > 0) {
+            if (inputLength == 0 && len >= input.length) {
+                // Encode straight from the caller's array
+                encode(b, off, input.length);
+                off += input.length;
+                len -= input.length;
+                continue;
+            }
+            int n = Math.min(len, input.length - inputLength);
+            System.arraycopy(b, off, input, inputLength, n);
+            inputLength += n;
+            off += n;
+            len -= n;
+            if (inputLength == input.length) {
+                encode(input, 0, inputLength);
+                inputLength = 0;
+            }
+        }
+    }
+
+    /**
+     * Writes the whole chunks written so far, the last partial chunk has to wait for
+     * {@link #close()}.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        int whole = inputLength - inputLength % encoding.bytesPerChunk();
+        if (whole > 0) {
+            encode(input, 0, whole);
+            System.arraycopy(input, whole, input, 0, inputLength - whole);
+            inputLength -= whole;
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try (out) {
+            encode(input, 0, inputLength);
+            inputLength = 0;
+        }
+    }
+
+    private void encode(byte[] bytes, int off, int len) throws IOException {
+        int length = encoding.encodeTo(output, 0, bytes, off, len);
+        out.write(output, 0, length);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
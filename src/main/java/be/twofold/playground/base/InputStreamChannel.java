@@ -0,0 +1,58 @@
+package be.twofold.playground.base;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * A channel over a stream, which reads straight into the array of a heap buffer, unlike
+ * {@link Channels#newChannel(InputStream)}.
+ */
+final class InputStreamChannel implements ReadableByteChannel {
+    private final InputStream in;
+    private byte[] buffer;
+    private boolean open = true;
+
+    InputStreamChannel(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        int len = dst.remaining();
+        if (len == 0) {
+            return 0;
+        }
+        if (dst.hasArray()) {
+            int n = in.read(dst.array(), dst.arrayOffset() + dst.position(), len);
+            if (n > 0) {
+                dst.position(dst.position() + n);
+            }
+            return n;
+        }
+        if (buffer == null) {
+            buffer = new byte[8192];
+        }
+        int n = in.read(buffer, 0, Math.min(len, buffer.length));
+        if (n > 0) {
+            dst.put(buffer, 0, n);
+        }
+        return n;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (open) {
+            open = false;
+            in.close();
+        }
+    }
+}
@@ -6,9 +6,16 @@ import java.io.*;
 import java.util.*;
 
 class StandardBaseEncoding extends BaseEncoding {
+    private static final int CHUNKS_PER_BLOCK = 256;
+
     final Alphabet alphabet;
 
     final Character paddingChar;
+
+    // The two chars of every value of 2 * bitsPerChar bits, so a chunk takes half the lookups
+    final char[] pairs;
+    final int pairBits;
+
     volatile BaseEncoding upperCase;
     volatile BaseEncoding lowerCase;
     volatile BaseEncoding ignoreCase;
@@ -22,6 +29,13 @@ class StandardBaseEncoding extends BaseEncoding {
         Check.argument(paddingChar == null || !alphabet.matches(paddingChar),
             () -> String.format("Padding character %s was already in alphabet", paddingChar));
         this.paddingChar = paddingChar;
+
+        this.pairBits = alphabet.bitsPerChar * 2;
+        this.pairs = new char[2 << pairBits];
+        for (int i = 0; i < 1 << pairBits; i++) {
+            pairs[2 * i] = alphabet.encode(i >>> alphabet.bitsPerChar);
+            pairs[2 * i + 1] = alphabet.encode(i & alphabet.mask);
+        }
     }
 
     @Override
@@ -63,6 +77,105 @@ class StandardBaseEncoding extends BaseEncoding {
         }
     }
 
+    @Override
+    int encodeTo(char[] target, int targetOff, byte[] bytes, int off, int len) {
+        Check.fromToIndex(off, off + len, bytes.length);
+        int bytesPerChunk = alphabet.bytesPerChunk;
+        int pairMask = (1 << pairBits) - 1;
+        int t = targetOff;
+        int end = off + len - len % bytesPerChunk;
+        int i = off;
+        if (bytesPerChunk == 5) {
+            // Base 32, the only alphabet with chunks too large for an int
+            for (; i < end; i += 5, t += 8) {
+                long chunk = (bytes[i] & 0xFFL) << 32 | (bytes[i + 1] & 0xFFL) << 24
+                    | (bytes[i + 2] & 0xFF) << 16 | (bytes[i + 3] & 0xFF) << 8 | bytes[i + 4] & 0xFF;
+                int a = (int) (chunk >>> 30) << 1;
+                int b = ((int) (chunk >>> 20) & 0x3FF) << 1;
+                int c = ((int) (chunk >>> 10) & 0x3FF) << 1;
+                int d = ((int) chunk & 0x3FF) << 1;
+                target[t] = pairs[a];
+                target[t + 1] = pairs[a + 1];
+                target[t + 2] = pairs[b];
+                target[t + 3] = pairs[b + 1];
+                target[t + 4] = pairs[c];
+                target[t + 5] = pairs[c + 1];
+                target[t + 6] = pairs[d];
+                target[t + 7] = pairs[d + 1];
+            }
+        }
+        for (; i < end; i += bytesPerChunk) {
+            long chunk = 0;
+            for (int j = 0; j < bytesPerChunk; j++) {
+                chunk = chunk << 8 | bytes[i + j] & 0xFF;
+            }
+            for (int shift = bytesPerChunk * 8 - pairBits; shift >= 0; shift -= pairBits) {
+                int pair = ((int) (chunk >>> shift) & pairMask) << 1;
+                target[t++] = pairs[pair];
+                target[t++] = pairs[pair + 1];
+            }
+        }
+        return encodeChunkTo(target, t, bytes, end, off + len - end);
+    }
+
+    /**
+     * Encodes to ASCII bytes with {@link #encodeTo(char[], int, byte[], int, int)}, a block of
+     * whole chunks at a time, so the chars in between take a fixed amount of memory.
+     */
+    @Override
+    final int encodeTo(byte[] target, int targetOff, byte[] bytes, int off, int len) {
+        Check.fromToIndex(off, off + len, bytes.length);
+        checkAsciiPadding();
+        int block = CHUNKS_PER_BLOCK * alphabet.bytesPerChunk;
+        char[] chars = new char[maxEncodedSize(Math.min(len, block))];
+        int t = targetOff;
+        for (int i = 0; i < len; i += block) {
+            int length = encodeTo(chars, 0, bytes, off + i, Math.min(block, len - i));
+            for (int j = 0; j < length; j++) {
+                target[t++] = (byte) chars[j];
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Encodes the last, partial chunk like {@link #encodeChunkTo(Appendable, byte[], int, int)}.
+     */
+    int encodeChunkTo(char[] target, int targetOff, byte[] bytes, int off, int len) {
+        if (len == 0) {
+            return targetOff;
+        }
+        StringBuilder chunk = new StringBuilder(alphabet.charsPerChunk);
+        try {
+            encodeChunkTo(chunk, bytes, off, len);
+        } catch (IOException impossible) {
+            throw new AssertionError(impossible);
+        }
+        chunk.getChars(0, chunk.length(), target, targetOff);
+        return targetOff + chunk.length();
+    }
+
+    @Override
+    int bytesPerChunk() {
+        return alphabet.bytesPerChunk;
+    }
+
+    @Override
+    int charsPerChunk() {
+        return alphabet.charsPerChunk;
+    }
+
+    @Override
+    Character padding() {
+        return paddingChar;
+    }
+
+    @Override
+    void checkAsciiPadding() {
+        Check.state(paddingChar == null || Ascii.isAscii(paddingChar),
+            () -> String.format("Padding character %s is not ASCII", paddingChar));
+    }
+
     @Override
     int maxDecodedSize(int chars) {
         return (int) ((alphabet.bitsPerChar * (long) chars + 7L) / 8L);
@@ -0,0 +1,1023 @@
+package be.twofold.playground.json;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Reads a JSON (<a href="http://www.ietf.org/rfc/rfc7159.txt">RFC 7159</a>)
+ * encoded value from UTF-8 bytes. The API mirrors {@link JsonReader}, but the
+ * whole document has to be available up front as a {@code byte[]}, a {@link
+ * ByteBuffer} or a mapped file.
+ *
+ * <p>Tokens are read straight from the bytes, there is no decoding pass to
+ * {@code char}s. Names and strings can also be read as a {@link JsonSlice}
+ * using {@link #nextNameSlice()} and {@link #nextStringSlice()}, which points
+ * back into the input and only decodes when asked to.
+ *
+ * <p>Instances of this class are not thread safe.
+ */
+public class JsonByteReader implements Closeable {
+    private static final long MIN_INCOMPLETE_INTEGER = Long.MIN_VALUE / 10;
+
+    private static final int PEEKED_NONE = 0;
+    private static final int PEEKED_BEGIN_OBJECT = 1;
+    private static final int PEEKED_END_OBJECT = 2;
+    private static final int PEEKED_BEGIN_ARRAY = 3;
+    private static final int PEEKED_END_ARRAY = 4;
+    private static final int PEEKED_TRUE = 5;
+    private static final int PEEKED_FALSE = 6;
+    private static final int PEEKED_NULL = 7;
+    private static final int PEEKED_DOUBLE_QUOTED = 9;
+    /**
+     * When this is returned, the string value is stored in peekedString.
+     */
+    private static final int PEEKED_BUFFERED = 11;
+    private static final int PEEKED_DOUBLE_QUOTED_NAME = 13;
+    /**
+     * When this is returned, the integer value is stored in peekedLong.
+     */
+    private static final int PEEKED_LONG = 15;
+    private static final int PEEKED_NUMBER = 16;
+    private static final int PEEKED_EOF = 17;
+
+    /* State machine when parsing numbers */
+    private static final int NUMBER_CHAR_NONE = 0;
+    private static final int NUMBER_CHAR_SIGN = 1;
+    private static final int NUMBER_CHAR_DIGIT = 2;
+    private static final int NUMBER_CHAR_DECIMAL = 3;
+    private static final int NUMBER_CHAR_FRACTION_DIGIT = 4;
+    private static final int NUMBER_CHAR_EXP_E = 5;
+    private static final int NUMBER_CHAR_EXP_SIGN = 6;
+    private static final int NUMBER_CHAR_EXP_DIGIT = 7;
+
+    /**
+     * The input JSON, only read using absolute gets.
+     */
+    private ByteBuffer buffer;
+    private int start;
+    private int pos;
+    private int limit;
+
+    private int lineNumber = 0;
+    private int lineStart = 0;
+
+    private int peeked = PEEKED_NONE;
+
+    /**
+     * A peeked value that was composed entirely of digits with an optional
+     * leading dash. Positive values may not have a leading 0.
+     */
+    private long peekedLong;
+
+    /**
+     * The number of bytes in a peeked number literal. Increment 'pos' by
+     * this after reading a number.
+     */
+    private int peekedNumberLength;
+
+    /**
+     * A peeked literal that was already consumed from the input, because
+     * converting it to a number failed.
+     */
+    private String peekedString;
+
+    private final Deque<JsonScope> stack = new ArrayDeque<>(32);
+
+    /**
+     * Optional index used to skip arrays and objects in one jump.
+     */
+    private JsonStructuralIndex index;
+
+    {
+        stack.push(JsonScope.EMPTY_DOCUMENT);
+    }
+
+    /**
+     * Creates a new instance that reads a JSON-encoded document from {@code array}.
+     */
+    public JsonByteReader(byte[] array) {
+        this(ByteBuffer.wrap(array));
+    }
+
+    /**
+     * Creates a new instance that reads a JSON-encoded document from the
+     * remaining bytes of {@code buffer}. The position of the buffer is not changed.
+     */
+    public JsonByteReader(ByteBuffer buffer) {
+        this.buffer = buffer.slice();
+        this.limit = this.buffer.limit();
+        skipByteOrderMark();
+    }
+
+    /**
+     * Maps the file at {@code path} and creates a new instance that reads from it.
+     */
+    public static JsonByteReader map(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to map: " + path);
+            }
+            return new JsonByteReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Resets this reader to read a new document from {@code [fromIndex, toIndex)}
+     * of {@code buffer}, so one instance can be reused for many small documents.
+     */
+    public void reset(ByteBuffer buffer, int fromIndex, int toIndex) {
+        reset(buffer, fromIndex, toIndex, 0);
+    }
+
+    /**
+     * Like {@link #reset(ByteBuffer, int, int)}, for a document that starts on
+     * the zero-based line {@code lineNumber} of a larger input. Locations in
+     * error messages count from that line.
+     */
+    public void reset(ByteBuffer buffer, int fromIndex, int toIndex, int lineNumber) {
+        Objects.checkFromToIndex(fromIndex, toIndex, buffer.limit());
+        this.buffer = buffer;
+        this.start = fromIndex;
+        this.pos = fromIndex;
+        this.limit = toIndex;
+        this.lineNumber = lineNumber;
+        this.lineStart = fromIndex;
+        this.peeked = PEEKED_NONE;
+        this.peekedString = null;
+        this.index = null;
+        stack.clear();
+        stack.push(JsonScope.EMPTY_DOCUMENT);
+    }
+
+    /**
+     * Builds a {@link JsonStructuralIndex} over the whole document. Afterwards
+     * {@link #skipValue()} jumps over arrays and objects, instead of
+     * tokenizing their contents. This costs one extra pass over the input, so
+     * it pays off when large parts of the document are skipped.
+     */
+    public void buildStructuralIndex() {
+        index = JsonStructuralIndex.build(buffer, start, limit);
+    }
+
+    /**
+     * Consumes the next token from the JSON stream and asserts that it is the
+     * beginning of a new array.
+     */
+    public void beginArray() throws IOException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        if (p == PEEKED_BEGIN_ARRAY) {
+            stack.push(JsonScope.EMPTY_ARRAY);
+            peeked = PEEKED_NONE;
+        } else {
+            throw new IllegalStateException("Expected BEGIN_ARRAY but was " + peek() + locationString());
+        }
+    }
+
+    /**
+     * Consumes the next token from the JSON stream and asserts that it is the
+     * end of the current array.
+     */
+    public void endArray() throws IOException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        if (p == PEEKED_END_ARRAY) {
+            stack.pop();
+            peeked = PEEKED_NONE;
+        } else {
+            throw new IllegalStateException("Expected END_ARRAY but was " + peek() + locationString());
+        }
+    }
+
+    /**
+     * Consumes the next token from the JSON stream and asserts that it is the
+     * beginning of a new object.
+     */
+    public void beginObject() throws IOException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        if (p == PEEKED_BEGIN_OBJECT) {
+            stack.push(JsonScope.EMPTY_OBJECT);
+            peeked = PEEKED_NONE;
+        } else {
+            throw new IllegalStateException("Expected BEGIN_OBJECT but was " + peek() + locationString());
+        }
+    }
+
+    /**
+     * Consumes the next token from the JSON stream and asserts that it is the
+     * end of the current object.
+     */
+    public void endObject() throws IOException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        if (p == PEEKED_END_OBJECT) {
+            stack.pop();
+            peeked = PEEKED_NONE;
+        } else {
+            throw new IllegalStateException("Expected END_OBJECT but was " + peek() + locationString());
+        }
+    }
+
+    /**
+     * Returns true if the current array or object has another element.
+     */
+    public boolean hasNext() throws IOException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        return p != PEEKED_END_OBJECT && p != PEEKED_END_ARRAY && p != PEEKED_EOF;
+    }
+
+    /**
+     * Returns the type of the next token without consuming it.
+     */
+    public JsonToken peek() throws IOException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+
+        return switch (p) {
+            case PEEKED_BEGIN_OBJECT -> JsonToken.BEGIN_OBJECT;
+            case PEEKED_END_OBJECT -> JsonToken.END_OBJECT;
+            case PEEKED_BEGIN_ARRAY -> JsonToken.BEGIN_ARRAY;
+            case PEEKED_END_ARRAY -> JsonToken.END_ARRAY;
+            case PEEKED_DOUBLE_QUOTED_NAME -> JsonToken.NAME;
+            case PEEKED_TRUE, PEEKED_FALSE -> JsonToken.BOOLEAN;
+            case PEEKED_NULL -> JsonToken.NULL;
+            case PEEKED_DOUBLE_QUOTED, PEEKED_BUFFERED -> JsonToken.STRING;
+            case PEEKED_LONG, PEEKED_NUMBER -> JsonToken.NUMBER;
+            case PEEKED_EOF -> JsonToken.END_DOCUMENT;
+            default -> throw new AssertionError();
+        };
+    }
+
+    private int doPeek() throws IOException {
+        JsonScope peekStack = stack.peek();
+        if (peekStack == JsonScope.EMPTY_ARRAY) {
+            replace(JsonScope.NONEMPTY_ARRAY);
+        } else if (peekStack == JsonScope.NONEMPTY_ARRAY) {
+            // Look for a comma before the next element.
+            int c = nextNonWhitespace(true);
+            switch (c) {
+                case ']':
+                    return peeked = PEEKED_END_ARRAY;
+                case ',':
+                    break;
+                default:
+                    throw syntaxError("Unterminated array");
+            }
+        } else if (peekStack == JsonScope.EMPTY_OBJECT || peekStack == JsonScope.NONEMPTY_OBJECT) {
+            replace(JsonScope.DANGLING_NAME);
+            // Look for a comma before the next element.
+            if (peekStack == JsonScope.NONEMPTY_OBJECT) {
+                int c = nextNonWhitespace(true);
+                switch (c) {
+                    case '}':
+                        return peeked = PEEKED_END_OBJECT;
+                    case ',':
+                        break;
+                    default:
+                        throw syntaxError("Unterminated object");
+                }
+            }
+            int c = nextNonWhitespace(true);
+            switch (c) {
+                case '"':
+                    return peeked = PEEKED_DOUBLE_QUOTED_NAME;
+                case '}':
+                    if (peekStack != JsonScope.NONEMPTY_OBJECT) {
+                        return peeked = PEEKED_END_OBJECT;
+                    } else {
+                        throw syntaxError("Expected name");
+                    }
+                default:
+                    throw syntaxError("Expected name");
+            }
+        } else if (peekStack == JsonScope.DANGLING_NAME) {
+            replace(JsonScope.NONEMPTY_OBJECT);
+            // Look for a colon before the value.
+            int c = nextNonWhitespace(true);
+            if (c != ':') {
+                throw syntaxError("Expected ':'");
+            }
+        } else if (peekStack == JsonScope.EMPTY_DOCUMENT) {
+            replace(JsonScope.NONEMPTY_DOCUMENT);
+        } else if (peekStack == JsonScope.NONEMPTY_DOCUMENT) {
+            int c = nextNonWhitespace(false);
+            if (c != -1) {
+                throw syntaxError("Expected end of document");
+            }
+            return peeked = PEEKED_EOF;
+        } else if (peekStack == JsonScope.CLOSED) {
+            throw new IllegalStateException("JsonByteReader is closed");
+        }
+
+        int c = nextNonWhitespace(true);
+        switch (c) {
+            case ']':
+                if (peekStack == JsonScope.EMPTY_ARRAY) {
+                    return peeked = PEEKED_END_ARRAY;
+                }
+                throw syntaxError("Unexpected value");
+            case '"':
+                return peeked = PEEKED_DOUBLE_QUOTED;
+            case '[':
+                return peeked = PEEKED_BEGIN_ARRAY;
+            case '{':
+                return peeked = PEEKED_BEGIN_OBJECT;
+            default:
+                pos--; // Don't consume the first character in a literal value.
+        }
+
+        int result = peekKeyword();
+        if (result != PEEKED_NONE) {
+            return result;
+        }
+
+        result = peekNumber();
+        if (result != PEEKED_NONE) {
+            return result;
+        }
+
+        throw syntaxError("Expected value");
+    }
+
+    private int peekKeyword() {
+        // Figure out which keyword we're matching against by its first character.
+        byte c = buffer.get(pos);
+        String keyword;
+        int peeking;
+        if (c == 't') {
+            keyword = "true";
+            peeking = PEEKED_TRUE;
+        } else if (c == 'f') {
+            keyword = "false";
+            peeking = PEEKED_FALSE;
+        } else if (c == 'n') {
+            keyword = "null";
+            peeking = PEEKED_NULL;
+        } else {
+            return PEEKED_NONE;
+        }
+
+        // Confirm that chars [1..length) match the keyword.
+        int length = keyword.length();
+        if (pos + length > limit) {
+            return PEEKED_NONE;
+        }
+        for (int i = 1; i < length; i++) {
+            if (buffer.get(pos + i) != keyword.charAt(i)) {
+                return PEEKED_NONE;
+            }
+        }
+
+        if (pos + length < limit && isLiteral(buffer.get(pos + length))) {
+            return PEEKED_NONE; // Don't match trues, falsey or nullsoft!
+        }
+
+        // We've found the keyword followed either by EOF or by a non-literal character.
+        pos += length;
+        return peeked = peeking;
+    }
+
+    private int peekNumber() {
+        ByteBuffer buffer = this.buffer;
+        int p = pos;
+        int l = limit;
+
+        long value = 0; // Negative to accommodate Long.MIN_VALUE more easily.
+        boolean negative = false;
+        boolean fitsInLong = true;
+        int last = NUMBER_CHAR_NONE;
+
+        int i = 0;
+
+        charactersOfNumber:
+        for (; p + i < l; i++) {
+            byte c = buffer.get(p + i);
+            switch (c) {
+                case '-':
+                    if (last == NUMBER_CHAR_NONE) {
+                        negative = true;
+                        last = NUMBER_CHAR_SIGN;
+                        continue;
+                    } else if (last == NUMBER_CHAR_EXP_E) {
+                        last = NUMBER_CHAR_EXP_SIGN;
+                        continue;
+                    }
+                    return PEEKED_NONE;
+
+                case '+':
+                    if (last == NUMBER_CHAR_EXP_E) {
+                        last = NUMBER_CHAR_EXP_SIGN;
+                        continue;
+                    }
+                    return PEEKED_NONE;
+
+                case 'e':
+                case 'E':
+                    if (last == NUMBER_CHAR_DIGIT || last == NUMBER_CHAR_FRACTION_DIGIT) {
+                        last = NUMBER_CHAR_EXP_E;
+                        continue;
+                    }
+                    return PEEKED_NONE;
+
+                case '.':
+                    if (last == NUMBER_CHAR_DIGIT) {
+                        last = NUMBER_CHAR_DECIMAL;
+                        continue;
+                    }
+                    return PEEKED_NONE;
+
+                default:
+                    if (c < '0' || c > '9') {
+                        if (!isLiteral(c)) {
+                            break charactersOfNumber;
+                        }
+                        return PEEKED_NONE;
+                    }
+                    if (last == NUMBER_CHAR_SIGN || last == NUMBER_CHAR_NONE) {
+                        value = -(c - '0');
+                        last = NUMBER_CHAR_DIGIT;
+                    } else if (last == NUMBER_CHAR_DIGIT) {
+                        if (value == 0) {
+                            return PEEKED_NONE; // Leading '0' prefix is not allowed (since it could be octal).
+                        }
+                        long newValue = value * 10 - (c - '0');
+                        fitsInLong &= value > MIN_INCOMPLETE_INTEGER
+                            || (value == MIN_INCOMPLETE_INTEGER && newValue < value);
+                        value = newValue;
+                    } else if (last == NUMBER_CHAR_DECIMAL) {
+                        last = NUMBER_CHAR_FRACTION_DIGIT;
+                    } else if (last == NUMBER_CHAR_EXP_E || last == NUMBER_CHAR_EXP_SIGN) {
+                        last = NUMBER_CHAR_EXP_DIGIT;
+                    }
+            }
+        }
+
+        // We've read a complete number. Decide if it's a PEEKED_LONG or a PEEKED_NUMBER.
+        // Don't store -0 as long; user might want to read it as double -0.0
+        // Don't try to convert Long.MIN_VALUE to positive long; it would overflow MAX_VALUE
+        if (last == NUMBER_CHAR_DIGIT && fitsInLong && (value != Long.MIN_VALUE || negative) && (value != 0 || !negative)) {
+            peekedLong = negative ? value : -value;
+            pos += i;
+            return peeked = PEEKED_LONG;
+        } else if (last == NUMBER_CHAR_DIGIT || last == NUMBER_CHAR_FRACTION_DIGIT
+            || last == NUMBER_CHAR_EXP_DIGIT) {
+            peekedNumberLength = i;
+            return peeked = PEEKED_NUMBER;
+        } else {
+            return PEEKED_NONE;
+        }
+    }
+
+    private static boolean isLiteral(byte c) {
+        return switch (c) {
+            case '{', '}', '[', ']', ':', ',', ' ', '\t', '\f', '\r', '\n' -> false;
+            default -> true;
+        };
+    }
+
+    /**
+     * Returns the next token, a {@link JsonToken#NAME property name}, and consumes it.
+     *
+     * @throws IOException if the next token in the stream is not a property
+     *                     name.
+     */
+    public String nextName() throws IOException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        if (p != PEEKED_DOUBLE_QUOTED_NAME) {
+            throw new IllegalStateException("Expected a name but was " + peek() + locationString());
+        }
+        int start = pos;
+        boolean escaped = skipQuotedValue();
+        peeked = PEEKED_NONE;
+        return JsonSlice.decode(buffer, start, pos - start - 1, escaped);
+    }
+
+    /**
+     * Consumes the next {@link JsonToken#NAME property name} and returns its
+     * index in {@code names}, or -1 if it is not one of them. Names that are
+     * not escaped are matched directly against the input, without creating a
+     * {@link String}.
+     *
+     * @throws IOException if the next token in the stream is not a property
+     *                     name.
+     */
+    public int nextName(JsonNames names) throws IOException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        if (p != PEEKED_DOUBLE_QUOTED_NAME) {
+            throw new IllegalStateException("Expected a name but was " + peek() + locationString());
+        }
+        peeked = PEEKED_NONE;
+
+        ByteBuffer buffer = this.buffer;
+        int hash = 0;
+        for (int i = pos, l = limit; i < l; i++) {
+            byte c = buffer.get(i);
+            if (c == '"') {
+                int result = names.indexOf(buffer, pos, i - pos, hash);
+                pos = i + 1;
+                return result;
+            }
+            if (c == '\\' || c == '\n') {
+                break;
+            }
+            hash = 31 * hash + c;
+        }
+
+        int start = pos;
+        boolean escaped = skipQuotedValue();
+        return names.indexOf(JsonSlice.decode(buffer, start, pos - start - 1, escaped));
+    }
+
+    /**
+     * Like {@link #nextName()}, but returns a slice of the input instead of a
+     * decoded {@link String}.
+     */
+    public JsonSlice nextNameSlice() throws IOException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        if (p != PEEKED_DOUBLE_QUOTED_NAME) {
+            throw new IllegalStateException("Expected a name but was " + peek() + locationString());
+        }
+        JsonSlice result = nextQuotedSlice();
+        peeked = PEEKED_NONE;
+        return result;
+    }
+
+    /**
+     * Returns the {@link JsonToken#STRING string} value of the next token,
+     * consuming it. If the next token is a number, this method will return its
+     * string form.
+     *
+     * @throws IllegalStateException if the next token is not a string or if
+     *                               this reader is closed.
+     */
+    public String nextString() throws IOException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        String result;
+        if (p == PEEKED_DOUBLE_QUOTED) {
+            int start = pos;
+            boolean escaped = skipQuotedValue();
+            result = JsonSlice.decode(buffer, start, pos - start - 1, escaped);
+        } else if (p == PEEKED_BUFFERED) {
+            result = peekedString;
+            peekedString = null;
+        } else if (p == PEEKED_LONG) {
+            result = Long.toString(peekedLong);
+        } else if (p == PEEKED_NUMBER) {
+            result = JsonSlice.utf8(buffer, pos, peekedNumberLength);
+            pos += peekedNumberLength;
+        } else {
+            throw new IllegalStateException("Expected a string but was " + peek() + locationString());
+        }
+        peeked = PEEKED_NONE;
+        return result;
+    }
+
+    /**
+     * Like {@link #nextString()}, but returns a slice of the input instead of
+     * a decoded {@link String}. Numbers are returned as their literal bytes.
+     */
+    public JsonSlice nextStringSlice() throws IOException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        JsonSlice result;
+        if (p == PEEKED_DOUBLE_QUOTED) {
+            result = nextQuotedSlice();
+        } else if (p == PEEKED_NUMBER) {
+            result = new JsonSlice(buffer, pos, peekedNumberLength, false);
+            pos += peekedNumberLength;
+        } else if (p == PEEKED_BUFFERED) {
+            byte[] bytes = peekedString.getBytes(StandardCharsets.UTF_8);
+            result = new JsonSlice(ByteBuffer.wrap(bytes), 0, bytes.length, false);
+            peekedString = null;
+        } else if (p == PEEKED_LONG) {
+            byte[] bytes = Long.toString(peekedLong).getBytes(StandardCharsets.US_ASCII);
+            result = new JsonSlice(ByteBuffer.wrap(bytes), 0, bytes.length, false);
+        } else {
+            throw new IllegalStateException("Expected a string but was " + peek() + locationString());
+        }
+        peeked = PEEKED_NONE;
+        return result;
+    }
+
+    /**
+     * Returns the {@link JsonToken#BOOLEAN boolean} value of the next token,
+     * consuming it.
+     *
+     * @throws IllegalStateException if the next token is not a boolean or if
+     *                               this reader is closed.
+     */
+    public boolean nextBoolean() throws IOException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        if (p == PEEKED_TRUE) {
+            peeked = PEEKED_NONE;
+            return true;
+        } else if (p == PEEKED_FALSE) {
+            peeked = PEEKED_NONE;
+            return false;
+        }
+        throw new IllegalStateException("Expected a boolean but was " + peek() + locationString());
+    }
+
+    /**
+     * Consumes the next token from the JSON stream and asserts that it is a
+     * literal null.
+     *
+     * @throws IllegalStateException if the next token is not null or if this
+     *                               reader is closed.
+     */
+    public void nextNull() throws IOException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        if (p == PEEKED_NULL) {
+            peeked = PEEKED_NONE;
+        } else {
+            throw new IllegalStateException("Expected null but was " + peek() + locationString());
+        }
+    }
+
+    /**
+     * Returns the {@link JsonToken#NUMBER double} value of the next token,
+     * consuming it. If the next token is a string, this method will attempt to
+     * parse it as a double using {@link Double#parseDouble(String)}.
+     *
+     * @throws IllegalStateException  if the next token is not a literal value.
+     * @throws NumberFormatException  if the next literal value cannot be parsed
+     *                                as a double.
+     * @throws MalformedJsonException if the next literal value is NaN or Infinity
+     */
+    public double nextDouble() throws IOException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+
+        if (p == PEEKED_LONG) {
+            peeked = PEEKED_NONE;
+            return (double) peekedLong;
+        }
+
+        if (p == PEEKED_NUMBER) {
+            double result = JsonNumbers.parseDouble(buffer, pos, peekedNumberLength);
+            if (Double.isInfinite(result)) {
+                throw new MalformedJsonException("JSON forbids NaN and infinities: " + result + locationString());
+            }
+            pos += peekedNumberLength;
+            peeked = PEEKED_NONE;
+            return result;
+        }
+
+        peekedString = nextLiteral(p, "a double");
+        peeked = PEEKED_BUFFERED;
+        double result = Double.parseDouble(peekedString); // don't catch this NumberFormatException.
+        if ((Double.isNaN(result) || Double.isInfinite(result))) {
+            throw new MalformedJsonException("JSON forbids NaN and infinities: " + result + locationString());
+        }
+        peekedString = null;
+        peeked = PEEKED_NONE;
+        return result;
+    }
+
+    /**
+     * Returns the {@link JsonToken#NUMBER long} value of the next token,
+     * consuming it. If the next token is a string, this method will attempt to
+     * parse it as a long. If the next token's numeric value cannot be exactly
+     * represented by a Java {@code long}, this method throws.
+     *
+     * @throws IllegalStateException if the next token is not a literal value.
+     * @throws NumberFormatException if the next literal value cannot be parsed
+     *                               as a number, or exactly represented as a long.
+     */
+    public long nextLong() throws IOException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+
+        if (p == PEEKED_LONG) {
+            peeked = PEEKED_NONE;
+            return peekedLong;
+        }
+
+        if (p == PEEKED_NUMBER) {
+            // Too large for the peeked fast case, or has a fraction or exponent
+            double asDouble = JsonNumbers.parseDouble(buffer, pos, peekedNumberLength);
+            long result = (long) asDouble;
+            if (result != asDouble) { // Make sure no precision was lost casting to 'long'.
+                peekedString = nextLiteral(p, "a long");
+                peeked = PEEKED_BUFFERED;
+                throw new NumberFormatException("Expected a long but was " + peekedString + locationString());
+            }
+            pos += peekedNumberLength;
+            peeked = PEEKED_NONE;
+            return result;
+        }
+
+        peekedString = nextLiteral(p, "a long");
+        peeked = PEEKED_BUFFERED;
+        try {
+            long result = Long.parseLong(peekedString);
+            peekedString = null;
+            peeked = PEEKED_NONE;
+            return result;
+        } catch (NumberFormatException ignored) {
+            // Fall back to parse as a double below.
+        }
+
+        double asDouble = Double.parseDouble(peekedString); // don't catch this NumberFormatException.
+        long result = (long) asDouble;
+        if (result != asDouble) { // Make sure no precision was lost casting to 'long'.
+            throw new NumberFormatException("Expected a long but was " + peekedString + locationString());
+        }
+        peekedString = null;
+        peeked = PEEKED_NONE;
+        return result;
+    }
+
+    /**
+     * Returns the {@link JsonToken#NUMBER int} value of the next token,
+     * consuming it. If the next token is a string, this method will attempt to
+     * parse it as an int. If the next token's numeric value cannot be exactly
+     * represented by a Java {@code int}, this method throws.
+     *
+     * @throws IllegalStateException if the next token is not a literal value.
+     * @throws NumberFormatException if the next literal value cannot be parsed
+     *                               as a number, or exactly represented as an int.
+     */
+    public int nextInt() throws IOException {
+        long result = nextLong();
+        if (result != (int) result) { // Make sure no precision was lost casting to 'int'.
+            throw new NumberFormatException("Expected an int but was " + result + locationString());
+        }
+        return (int) result;
+    }
+
+    /**
+     * Consumes a number or string literal and returns its text.
+     */
+    private String nextLiteral(int p, String expected) throws IOException {
+        if (p == PEEKED_NUMBER) {
+            String result = JsonSlice.utf8(buffer, pos, peekedNumberLength);
+            pos += peekedNumberLength;
+            return result;
+        } else if (p == PEEKED_DOUBLE_QUOTED) {
+            int start = pos;
+            boolean escaped = skipQuotedValue();
+            return JsonSlice.decode(buffer, start, pos - start - 1, escaped);
+        } else if (p == PEEKED_BUFFERED) {
+            return peekedString;
+        }
+        throw new IllegalStateException("Expected " + expected + " but was " + peek() + locationString());
+    }
+
+    /**
+     * Closes this JSON reader. The underlying buffer is left untouched.
+     */
+    @Override
+    public void close() {
+        peeked = PEEKED_NONE;
+        peekedString = null;
+        stack.clear();
+        stack.push(JsonScope.CLOSED);
+    }
+
+    /**
+     * Skips the next value recursively. This method is intended for use when
+     * the JSON token stream contains unrecognized or unhandled values.
+     *
+     * <p>The behavior is the same as {@link JsonReader#skipValue()}. When a
+     * structural index was built, arrays and objects are skipped in one jump.
+     */
+    public void skipValue() throws IOException {
+        if (index != null && skipIndexed()) {
+            return;
+        }
+
+        int count = 0;
+        do {
+            int p = peeked;
+            if (p == PEEKED_NONE) {
+                p = doPeek();
+            }
+
+            switch (p) {
+                case PEEKED_BEGIN_ARRAY:
+                    stack.push(JsonScope.EMPTY_ARRAY);
+                    count++;
+                    break;
+                case PEEKED_BEGIN_OBJECT:
+                    stack.push(JsonScope.EMPTY_OBJECT);
+                    count++;
+                    break;
+                case PEEKED_END_ARRAY, PEEKED_END_OBJECT:
+                    stack.pop();
+                    count--;
+                    break;
+                case PEEKED_DOUBLE_QUOTED, PEEKED_DOUBLE_QUOTED_NAME:
+                    skipQuotedValue();
+                    break;
+                case PEEKED_NUMBER:
+                    pos += peekedNumberLength;
+                    break;
+                case PEEKED_BUFFERED:
+                    peekedString = null;
+                    break;
+                case PEEKED_EOF:
+                    // Do nothing
+                    return;
+                // For all other tokens there is nothing to do; token has already been consumed
+            }
+            peeked = PEEKED_NONE;
+        } while (count > 0);
+    }
+
+    private boolean skipIndexed() throws IOException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        if (p != PEEKED_BEGIN_ARRAY && p != PEEKED_BEGIN_OBJECT) {
+            return false;
+        }
+
+        // The opening bracket was consumed by doPeek
+        int closing = index.closingPosition(pos - 1);
+        if (closing < 0) {
+            return false;
+        }
+        pos = closing + 1;
+        lineNumber = index.lineNumber(pos);
+        lineStart = index.lineStart(pos);
+        peeked = PEEKED_NONE;
+        return true;
+    }
+
+    private JsonSlice nextQuotedSlice() throws IOException {
+        int start = pos;
+        boolean escaped = skipQuotedValue();
+        return new JsonSlice(buffer, start, pos - start - 1, escaped);
+    }
+
+    /**
+     * Moves past the closing quote of a string, validating escape sequences
+     * along the way. The opening quote should have already been read.
+     *
+     * @return true if the string contains escape sequences
+     */
+    private boolean skipQuotedValue() throws IOException {
+        // Like nextNonWhitespace, this uses locals 'p' and 'l' to save inner-loop field access.
+        ByteBuffer buffer = this.buffer;
+        int p = pos;
+        int l = limit;
+        boolean escaped = false;
+        while (p < l) {
+            byte c = buffer.get(p++);
+            if (c == '"') {
+                pos = p;
+                return escaped;
+            } else if (c == '\\') {
+                pos = p;
+                skipEscapeCharacter();
+                p = pos;
+                escaped = true;
+            } else if (c == '\n') {
+                lineNumber++;
+                lineStart = p;
+            }
+        }
+        pos = p;
+        throw syntaxError("Unterminated string");
+    }
+
+    /**
+     * Validates the escape sequence that follows a backslash. The backslash
+     * should have already been read.
+     */
+    private void skipEscapeCharacter() throws IOException {
+        if (pos == limit) {
+            throw syntaxError("Unterminated escape sequence");
+        }
+
+        byte escaped = buffer.get(pos++);
+        switch (escaped) {
+            case 'u':
+                if (pos + 4 > limit) {
+                    throw syntaxError("Unterminated escape sequence");
+                }
+                if (JsonSlice.hex(buffer, pos) < 0) {
+                    throw new NumberFormatException("\\u" + JsonSlice.utf8(buffer, pos, 4));
+                }
+                pos += 4;
+                break;
+            case '\n':
+                lineNumber++;
+                lineStart = pos;
+                break;
+            case 't', 'b', 'n', 'r', 'f', '\'', '"', '\\', '/':
+                break;
+            default:
+                throw syntaxError("Invalid escape sequence");
+        }
+    }
+
+    private void replace(JsonScope topOfStack) {
+        stack.pop();
+        stack.push(topOfStack);
+    }
+
+    private void skipByteOrderMark() {
+        if (limit >= 3
+            && buffer.get(0) == (byte) 0xEF
+            && buffer.get(1) == (byte) 0xBB
+            && buffer.get(2) == (byte) 0xBF) {
+            pos = 3;
+            lineStart = 3;
+        }
+    }
+
+    /**
+     * Returns the next byte in the input that is not whitespace. When this
+     * returns, the returned byte is always at {@code buffer[pos-1]}; this means
+     * the caller can always push back the returned byte by decrementing {@code pos}.
+     */
+    private int nextNonWhitespace(boolean throwOnEof) throws IOException {
+        ByteBuffer buffer = this.buffer;
+        int p = pos;
+        int l = limit;
+        while (p < l) {
+            int c = buffer.get(p++);
+            if (c == '\n') {
+                lineNumber++;
+                lineStart = p;
+                continue;
+            } else if (c == ' ' || c == '\r' || c == '\t') {
+                continue;
+            }
+
+            pos = p;
+            return c;
+        }
+        pos = p;
+        if (throwOnEof) {
+            throw new EOFException("End of input" + locationString());
+        } else {
+            return -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + locationString();
+    }
+
+    String locationString() {
+        int line = lineNumber + 1;
+        int column = pos - lineStart + 1;
+        return " at line " + line + " column " + column;
+    }
+
+    /**
+     * Throws a new IO exception with the given message and a context snippet
+     * with this reader's content.
+     */
+    private IOException syntaxError(String message) throws IOException {
+        throw new MalformedJsonException(message + locationString());
+    }
+}
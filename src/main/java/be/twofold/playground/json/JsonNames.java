@@ -0,0 +1,157 @@
+package be.twofold.playground.json;
+
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * A fixed table of expected property names. Passing it to {@link JsonReader#nextName(JsonNames)}
+ * or {@link JsonByteReader#nextName(JsonNames)} returns the index of the name in this table,
+ * matched against the reader's buffer without creating a {@link String}.
+ *
+ * <pre>{@code
+ * static final JsonNames NAMES = JsonNames.of("id", "text", "user");
+ *
+ * switch (reader.nextName(NAMES)) {
+ *     case 0 -> id = reader.nextLong();
+ *     case 1 -> text = reader.nextString();
+ *     case 2 -> user = readUser(reader);
+ *     default -> reader.skipValue();
+ * }
+ * }</pre>
+ *
+ * <p>Instances are immutable and can be shared between threads.
+ */
+public final class JsonNames {
+    private final String[] names;
+    private final char[][] chars;
+    private final byte[][] bytes;
+
+    // Open addressing tables holding index + 1, so 0 is an empty slot
+    private final int[] charSlots;
+    private final int[] byteSlots;
+
+    private JsonNames(String[] names) {
+        this.names = names;
+        this.chars = new char[names.length][];
+        this.bytes = new byte[names.length][];
+
+        int capacity = Integer.highestOneBit(Math.max(names.length, 1) * 4 - 1) << 1;
+        this.charSlots = new int[capacity];
+        this.byteSlots = new int[capacity];
+
+        for (int i = 0; i < names.length; i++) {
+            chars[i] = names[i].toCharArray();
+            bytes[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            if (indexOf(names[i]) >= 0) {
+                throw new IllegalArgumentException("Duplicate name: " + names[i]);
+            }
+            insert(charSlots, names[i].hashCode(), i);
+            insert(byteSlots, hash(bytes[i]), i);
+        }
+    }
+
+    public static JsonNames of(String... names) {
+        String[] copy = names.clone();
+        for (String name : copy) {
+            Objects.requireNonNull(name, "name must not be null");
+        }
+        return new JsonNames(copy);
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Returns the canonical instance of the name at {@code index}.
+     */
+    public String get(int index) {
+        return names[index];
+    }
+
+    /**
+     * Returns the index of {@code name}, or -1 if it is not in this table.
+     */
+    public int indexOf(String name) {
+        int mask = charSlots.length - 1;
+        for (int slot = mix(name.hashCode()) & mask; charSlots[slot] != 0; slot = (slot + 1) & mask) {
+            int index = charSlots[slot] - 1;
+            if (names[index].equals(name)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Looks up the chars in {@code [offset, offset + length)}, {@code hash} has to be computed
+     * like {@link String#hashCode()}.
+     */
+    int indexOf(char[] buffer, int offset, int length, int hash) {
+        int mask = charSlots.length - 1;
+        for (int slot = mix(hash) & mask; charSlots[slot] != 0; slot = (slot + 1) & mask) {
+            int index = charSlots[slot] - 1;
+            if (Arrays.equals(chars[index], 0, chars[index].length, buffer, offset, offset + length)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Looks up the UTF-8 bytes in {@code [offset, offset + length)}, {@code hash} has to be
+     * computed like {@link #hash(byte[])}.
+     */
+    int indexOf(ByteBuffer buffer, int offset, int length, int hash) {
+        int mask = byteSlots.length - 1;
+        for (int slot = mix(hash) & mask; byteSlots[slot] != 0; slot = (slot + 1) & mask) {
+            int index = byteSlots[slot] - 1;
+            if (equals(bytes[index], buffer, offset, length)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean equals(byte[] name, ByteBuffer buffer, int offset, int length) {
+        if (name.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name[i] != buffer.get(offset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void insert(int[] slots, int hash, int index) {
+        int mask = slots.length - 1;
+        int slot = mix(hash) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = index + 1;
+    }
+
+    /**
+     * Same as {@link String#hashCode()}, but over bytes. Only equal to it for ASCII.
+     */
+    static int hash(byte[] bytes) {
+        int hash = 0;
+        for (byte b : bytes) {
+            hash = 31 * hash + b;
+        }
+        return hash;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        return "JsonNames" + Arrays.toString(names);
+    }
+}
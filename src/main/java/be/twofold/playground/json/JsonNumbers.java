@@ -0,0 +1,218 @@
+package be.twofold.playground.json;
+
+import java.math.*;
+import java.nio.*;
+
+/**
+ * Converts number literals to doubles straight from the reader's buffer, in the style of
+ * fast_float.
+ *
+ * <p>The literal is split into a 64-bit decimal significand and a power of ten. Small values
+ * that are exact in a double are handled with a single multiplication or division (Clinger's
+ * fast path). The rest goes through the Eisel-Lemire algorithm, which multiplies the significand
+ * by a 128-bit approximation of the power of ten, and only has to give up when the product is
+ * too close to a rounding boundary. The rare literals with more than 19 significant digits, the
+ * ambiguous cases and subnormals fall back to {@link Double#parseDouble(String)}.
+ *
+ * <p>The literals must already have been validated against the JSON number grammar.
+ */
+final class JsonNumbers {
+    private static final int MAX_DIGITS = 19;
+    private static final int SMALLEST_POWER_OF_TEN = -342;
+    private static final int LARGEST_POWER_OF_TEN = 308;
+
+    private static final double[] EXACT_POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+    };
+
+    /**
+     * The powers of five from 5^-342 to 5^308, as 128-bit values normalized so the highest bit is
+     * set, split into the high and the low 64 bits.
+     */
+    private static final long[] POWERS_OF_FIVE_HIGH = new long[LARGEST_POWER_OF_TEN - SMALLEST_POWER_OF_TEN + 1];
+    private static final long[] POWERS_OF_FIVE_LOW = new long[LARGEST_POWER_OF_TEN - SMALLEST_POWER_OF_TEN + 1];
+
+    static {
+        BigInteger five = BigInteger.valueOf(5);
+        for (int q = SMALLEST_POWER_OF_TEN; q <= LARGEST_POWER_OF_TEN; q++) {
+            BigInteger value;
+            if (q >= 0) {
+                // Truncated
+                value = five.pow(q);
+                value = value.bitLength() < 128
+                    ? value.shiftLeft(128 - value.bitLength())
+                    : value.shiftRight(value.bitLength() - 128);
+            } else {
+                // The reciprocal, rounded up, then truncated
+                BigInteger power = five.pow(-q);
+                int z = power.bitLength();
+                int b = q >= -27 ? z + 127 : 2 * z + 128;
+                value = BigInteger.ONE.shiftLeft(b).divide(power).add(BigInteger.ONE);
+                value = value.shiftRight(Math.max(value.bitLength() - 128, 0));
+            }
+            POWERS_OF_FIVE_HIGH[q - SMALLEST_POWER_OF_TEN] = value.shiftRight(64).longValue();
+            POWERS_OF_FIVE_LOW[q - SMALLEST_POWER_OF_TEN] = value.longValue();
+        }
+    }
+
+    private JsonNumbers() {
+    }
+
+    static double parseDouble(char[] buffer, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        boolean negative = buffer[i] == '-';
+        if (negative) {
+            i++;
+        }
+
+        long significand = 0;
+        int digits = 0;
+        int exponent = 0;
+        for (; i < end && buffer[i] >= '0' && buffer[i] <= '9'; i++) {
+            significand = significand * 10 + (buffer[i] - '0');
+            digits += significand != 0 ? 1 : 0;
+        }
+        if (i < end && buffer[i] == '.') {
+            for (i++; i < end && buffer[i] >= '0' && buffer[i] <= '9'; i++) {
+                significand = significand * 10 + (buffer[i] - '0');
+                digits += significand != 0 ? 1 : 0;
+                exponent--;
+            }
+        }
+        if (i < end) {
+            // What remains is the exponent
+            i++;
+            boolean negativeExponent = buffer[i] == '-';
+            if (buffer[i] == '-' || buffer[i] == '+') {
+                i++;
+            }
+            int explicit = 0;
+            for (; i < end; i++) {
+                explicit = Math.min(explicit * 10 + (buffer[i] - '0'), 100_000);
+            }
+            exponent += negativeExponent ? -explicit : explicit;
+        }
+
+        if (digits > MAX_DIGITS) {
+            return Double.parseDouble(new String(buffer, offset, length));
+        }
+        double result = toDouble(negative, significand, exponent);
+        if (Double.isNaN(result)) {
+            return Double.parseDouble(new String(buffer, offset, length));
+        }
+        return result;
+    }
+
+    static double parseDouble(ByteBuffer buffer, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        boolean negative = buffer.get(i) == '-';
+        if (negative) {
+            i++;
+        }
+
+        long significand = 0;
+        int digits = 0;
+        int exponent = 0;
+        for (byte b; i < end && (b = buffer.get(i)) >= '0' && b <= '9'; i++) {
+            significand = significand * 10 + (b - '0');
+            digits += significand != 0 ? 1 : 0;
+        }
+        if (i < end && buffer.get(i) == '.') {
+            for (byte b; ++i < end && (b = buffer.get(i)) >= '0' && b <= '9'; ) {
+                significand = significand * 10 + (b - '0');
+                digits += significand != 0 ? 1 : 0;
+                exponent--;
+            }
+        }
+        if (i < end) {
+            // What remains is the exponent
+            byte sign = buffer.get(++i);
+            if (sign == '-' || sign == '+') {
+                i++;
+            }
+            int explicit = 0;
+            for (; i < end; i++) {
+                explicit = Math.min(explicit * 10 + (buffer.get(i) - '0'), 100_000);
+            }
+            exponent += sign == '-' ? -explicit : explicit;
+        }
+
+        if (digits > MAX_DIGITS) {
+            return Double.parseDouble(JsonSlice.utf8(buffer, offset, length));
+        }
+        double result = toDouble(negative, significand, exponent);
+        if (Double.isNaN(result)) {
+            return Double.parseDouble(JsonSlice.utf8(buffer, offset, length));
+        }
+        return result;
+    }
+
+    /**
+     * Returns {@code significand * 10^power}, correctly rounded, or NaN when the result can't be
+     * determined without more precision. The significand is unsigned.
+     */
+    static double toDouble(boolean negative, long significand, int power) {
+        if (power >= -22 && power <= 22 && Long.compareUnsigned(significand, 1L << 53) <= 0) {
+            // Both operands are exact, so the single rounding step gives the right result
+            double d = (double) significand;
+            d = power < 0 ? d / EXACT_POWERS_OF_TEN[-power] : d * EXACT_POWERS_OF_TEN[power];
+            return negative ? -d : d;
+        }
+        if (significand == 0 || power < SMALLEST_POWER_OF_TEN) {
+            return negative ? -0.0 : 0.0;
+        }
+        if (power > LARGEST_POWER_OF_TEN) {
+            return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+
+        long factorHigh = POWERS_OF_FIVE_HIGH[power - SMALLEST_POWER_OF_TEN];
+        // floor(log2(10^power)) + 1024 + 63, the bias and the width of the product
+        long exponent = (((152170L + 65536L) * power) >> 16) + 1024 + 63;
+        int leadingZeros = Long.numberOfLeadingZeros(significand);
+        long shifted = significand << leadingZeros;
+
+        long lower = shifted * factorHigh;
+        long upper = Math.unsignedMultiplyHigh(shifted, factorHigh);
+        if ((upper & 0x1FF) == 0x1FF && Long.compareUnsigned(lower + shifted, lower) < 0) {
+            // The truncated factor might be off, bring in the low 64 bits as well
+            long factorLow = POWERS_OF_FIVE_LOW[power - SMALLEST_POWER_OF_TEN];
+            long productLow = shifted * factorLow;
+            long productMiddle = lower + Math.unsignedMultiplyHigh(shifted, factorLow);
+            if (Long.compareUnsigned(productMiddle, lower) < 0) {
+                upper++;
+            }
+            if (productMiddle + 1 == 0 && (upper & 0x1FF) == 0x1FF && Long.compareUnsigned(productLow + shifted, productLow) < 0) {
+                return Double.NaN;
+            }
+            lower = productMiddle;
+        }
+
+        long upperBit = upper >>> 63;
+        long mantissa = upper >>> (upperBit + 9);
+        leadingZeros += (int) (1 ^ upperBit);
+        if (lower == 0 && (upper & 0x1FF) == 0 && (mantissa & 3) == 1) {
+            // Exactly halfway between two doubles, as far as we can tell
+            return Double.NaN;
+        }
+
+        mantissa += mantissa & 1;
+        mantissa >>>= 1;
+        if (mantissa >= 1L << 53) {
+            // Rounding up overflowed into the next power of two
+            mantissa = 1L << 52;
+            leadingZeros--;
+        }
+        mantissa &= ~(1L << 52);
+
+        long realExponent = exponent - leadingZeros;
+        if (realExponent < 1 || realExponent > 2046) {
+            // Subnormal or infinite, leave those to the slow path
+            return Double.NaN;
+        }
+        long bits = mantissa | realExponent << 52 | (negative ? Long.MIN_VALUE : 0);
+        return Double.longBitsToDouble(bits);
+    }
+}
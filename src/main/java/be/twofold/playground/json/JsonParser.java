@@ -0,0 +1,116 @@
+package be.twofold.playground.json;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Builds a {@link JsonValue} tree from a {@link JsonReader}.
+ *
+ * <p>The tree is built without recursion, so deeply nested documents don't
+ * overflow the stack. Children are collected on a single shared stack and
+ * copied into exactly sized arrays when their container is closed. Numbers are
+ * kept as their literal text until the value is requested.
+ */
+public final class JsonParser {
+    private JsonParser() {
+    }
+
+    public static JsonValue parse(String json) throws IOException {
+        return parse(new StringReader(json));
+    }
+
+    public static JsonValue parse(Reader in) throws IOException {
+        try (JsonReader reader = new JsonReader(in)) {
+            JsonValue result = parse(reader);
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new MalformedJsonException("Expected end of document" + reader.locationString());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Reads the next value from {@code reader}, including all of its children.
+     *
+     * @throws IllegalStateException if the next token is not the start of a value
+     */
+    public static JsonValue parse(JsonReader reader) throws IOException {
+        // Holds the children of all open containers, objects store their keys interleaved with the values
+        List<Object> stack = new ArrayList<>();
+        int[] starts = new int[16];
+        int depth = 0;
+
+        while (true) {
+            JsonValue value;
+            JsonToken token = reader.peek();
+            if (depth == 0 && (token == JsonToken.END_ARRAY || token == JsonToken.END_OBJECT || token == JsonToken.NAME)) {
+                throw new IllegalStateException("Expected a value but was " + token + reader.locationString());
+            }
+            switch (token) {
+                case BEGIN_ARRAY -> {
+                    reader.beginArray();
+                    starts = push(starts, depth++, stack.size());
+                    continue;
+                }
+                case BEGIN_OBJECT -> {
+                    reader.beginObject();
+                    starts = push(starts, depth++, stack.size());
+                    continue;
+                }
+                case NAME -> {
+                    stack.add(reader.nextName());
+                    continue;
+                }
+                case END_ARRAY -> {
+                    reader.endArray();
+                    List<Object> children = stack.subList(starts[--depth], stack.size());
+                    value = new JsonValue.JsonArray(children.toArray(JsonValue[]::new));
+                    children.clear();
+                }
+                case END_OBJECT -> {
+                    reader.endObject();
+                    List<Object> children = stack.subList(starts[--depth], stack.size());
+                    value = toObject(reader, children);
+                    children.clear();
+                }
+                case STRING -> value = new JsonValue.JsonString(reader.nextString());
+                case NUMBER -> value = new JsonValue.JsonNumber(reader.nextString());
+                case BOOLEAN -> value = JsonValue.JsonBoolean.of(reader.nextBoolean());
+                case NULL -> {
+                    reader.nextNull();
+                    value = JsonValue.JsonNull.INSTANCE;
+                }
+                case END_DOCUMENT -> throw new EOFException("End of input" + reader.locationString());
+                default -> throw new AssertionError();
+            }
+
+            if (depth == 0) {
+                return value;
+            }
+            stack.add(value);
+        }
+    }
+
+    private static JsonValue toObject(JsonReader reader, List<Object> children) throws IOException {
+        int size = children.size() / 2;
+        String[] keys = new String[size];
+        JsonValue[] values = new JsonValue[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = (String) children.get(2 * i);
+            values[i] = (JsonValue) children.get(2 * i + 1);
+        }
+        try {
+            return new JsonValue.JsonObject(keys, values);
+        } catch (IllegalArgumentException e) {
+            throw new MalformedJsonException(e.getMessage() + reader.locationString(), e);
+        }
+    }
+
+    private static int[] push(int[] starts, int depth, int start) {
+        if (depth == starts.length) {
+            starts = Arrays.copyOf(starts, depth * 2);
+        }
+        starts[depth] = start;
+        return starts;
+    }
+}
@@ -0,0 +1,229 @@
+package be.twofold.playground.json;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A compiled path into a JSON document, in a small subset of JSONPath.
+ *
+ * <ul>
+ *   <li>{@code $} is the root, and has to come first</li>
+ *   <li>{@code .name} and {@code ['name']} select a property of an object</li>
+ *   <li>{@code [2]} selects an element of an array</li>
+ *   <li>{@code .*} and {@code [*]} select every property or element</li>
+ * </ul>
+ *
+ * <p>The path drives a {@link JsonReader} directly. Only the values on the
+ * path are tokenized, everything else is skipped by matching brackets, without
+ * decoding strings or numbers and without validating the skipped content.
+ *
+ * <pre>{@code
+ * static final JsonPath NAMES = JsonPath.compile("$.statuses[*].user.name");
+ *
+ * NAMES.select(reader, r -> names.add(r.nextString()));
+ * }</pre>
+ *
+ * <p>Instances are immutable and can be shared between threads.
+ */
+public final class JsonPath {
+    private static final JsonNames NO_NAMES = JsonNames.of();
+
+    private final String path;
+    private final Step[] steps;
+
+    private JsonPath(String path, Step[] steps) {
+        this.path = path;
+        this.steps = steps;
+    }
+
+    public static JsonPath compile(String path) {
+        return new JsonPath(path, new Compiler(path).compile());
+    }
+
+    /**
+     * Reads the next value from {@code reader}, and returns all values matching this path.
+     */
+    public List<JsonValue> select(JsonReader reader) throws IOException {
+        List<JsonValue> result = new ArrayList<>();
+        select(reader, r -> result.add(JsonParser.parse(r)));
+        return result;
+    }
+
+    /**
+     * Reads the next value from {@code reader}, and calls {@code handler} for every value matching
+     * this path, in document order.
+     */
+    public void select(JsonReader reader, ValueHandler handler) throws IOException {
+        select(reader, 0, handler);
+    }
+
+    private void select(JsonReader reader, int index, ValueHandler handler) throws IOException {
+        if (index == steps.length) {
+            handler.handle(reader);
+            return;
+        }
+
+        Step step = steps[index];
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BEGIN_OBJECT && step.kind != Step.INDEX) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (step.kind == Step.WILDCARD) {
+                    reader.nextName(NO_NAMES);
+                    select(reader, index + 1, handler);
+                } else if (reader.nextName(step.names) == 0) {
+                    select(reader, index + 1, handler);
+                } else {
+                    reader.skipValueUnchecked();
+                }
+            }
+            reader.endObject();
+        } else if (token == JsonToken.BEGIN_ARRAY && step.kind != Step.NAME) {
+            reader.beginArray();
+            for (int i = 0; reader.hasNext(); i++) {
+                if (step.kind == Step.WILDCARD || i == step.index) {
+                    select(reader, index + 1, handler);
+                } else {
+                    reader.skipValueUnchecked();
+                }
+            }
+            reader.endArray();
+        } else {
+            reader.skipValueUnchecked();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+
+    /**
+     * Called with the reader positioned at a matching value, which has to be consumed completely.
+     */
+    @FunctionalInterface
+    public interface ValueHandler {
+        void handle(JsonReader reader) throws IOException;
+    }
+
+    private static final class Step {
+        static final int NAME = 0;
+        static final int INDEX = 1;
+        static final int WILDCARD = 2;
+
+        final int kind;
+        final JsonNames names;
+        final int index;
+
+        private Step(int kind, JsonNames names, int index) {
+            this.kind = kind;
+            this.names = names;
+            this.index = index;
+        }
+    }
+
+    private static final class Compiler {
+        private final String path;
+        private int pos;
+
+        Compiler(String path) {
+            this.path = Objects.requireNonNull(path, "path must not be null");
+        }
+
+        Step[] compile() {
+            expect('$');
+            List<Step> steps = new ArrayList<>();
+            while (pos < path.length()) {
+                steps.add(switch (path.charAt(pos++)) {
+                    case '.' -> dotStep();
+                    case '[' -> bracketStep();
+                    default -> throw error("Expected '.' or '['", pos - 1);
+                });
+            }
+            return steps.toArray(Step[]::new);
+        }
+
+        private Step dotStep() {
+            if (pos < path.length() && path.charAt(pos) == '.') {
+                throw error("Recursive descent is not supported", pos);
+            }
+            if (pos < path.length() && path.charAt(pos) == '*') {
+                pos++;
+                return new Step(Step.WILDCARD, null, -1);
+            }
+
+            int start = pos;
+            while (pos < path.length() && path.charAt(pos) != '.' && path.charAt(pos) != '[') {
+                pos++;
+            }
+            if (pos == start) {
+                throw error("Expected name", start);
+            }
+            return name(path.substring(start, pos));
+        }
+
+        private Step bracketStep() {
+            if (pos == path.length()) {
+                throw error("Unclosed bracket", pos);
+            }
+
+            Step step;
+            char c = path.charAt(pos);
+            if (c == '*') {
+                pos++;
+                step = new Step(Step.WILDCARD, null, -1);
+            } else if (c == '\'' || c == '"') {
+                step = name(quoted(c));
+            } else if (c >= '0' && c <= '9') {
+                step = new Step(Step.INDEX, null, index());
+            } else {
+                throw error("Expected '*', an index or a quoted name", pos);
+            }
+            expect(']');
+            return step;
+        }
+
+        private String quoted(char quote) {
+            StringBuilder builder = new StringBuilder();
+            for (pos++; pos < path.length(); pos++) {
+                char c = path.charAt(pos);
+                if (c == quote) {
+                    pos++;
+                    return builder.toString();
+                }
+                if (c == '\\' && pos + 1 < path.length()) {
+                    c = path.charAt(++pos);
+                }
+                builder.append(c);
+            }
+            throw error("Unterminated name", pos);
+        }
+
+        private int index() {
+            int start = pos;
+            long value = 0;
+            while (pos < path.length() && path.charAt(pos) >= '0' && path.charAt(pos) <= '9') {
+                value = value * 10 + (path.charAt(pos++) - '0');
+                if (value > Integer.MAX_VALUE) {
+                    throw error("Index too large", start);
+                }
+            }
+            return (int) value;
+        }
+
+        private static Step name(String name) {
+            return new Step(Step.NAME, JsonNames.of(name), -1);
+        }
+
+        private void expect(char c) {
+            if (pos == path.length() || path.charAt(pos) != c) {
+                throw error("Expected '" + c + "'", pos);
+            }
+            pos++;
+        }
+
+        private IllegalArgumentException error(String message, int index) {
+            return new IllegalArgumentException(message + " at index " + index + " in path: " + path);
+        }
+    }
+}
@@ -658,6 +658,44 @@ public class JsonReader implements Closeable {
         return result;
     }
 
+    /**
+     * Consumes the next {@link JsonToken#NAME property name} and returns its
+     * index in {@code names}, or -1 if it is not one of them. Names that are
+     * not escaped are matched directly in the buffer, without creating a
+     * {@link String}.
+     *
+     * @throws IOException if the next token in the stream is not a property
+     *                     name.
+     */
+    public int nextName(JsonNames names) throws IOException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        if (p != PEEKED_DOUBLE_QUOTED_NAME) {
+            throw new IllegalStateException("Expected a name but was " + peek() + locationString());
+        }
+        peeked = PEEKED_NONE;
+
+        char[] buffer = this.buffer;
+        int hash = 0;
+        for (int i = pos, l = limit; i < l; i++) {
+            char c = buffer[i];
+            if (c == '"') {
+                int result = names.indexOf(buffer, pos, i - pos, hash);
+                pos = i + 1;
+                return result;
+            }
+            if (c == '\\' || c == '\n') {
+                break;
+            }
+            hash = 31 * hash + c;
+        }
+
+        // Escaped, or not entirely in the buffer
+        return names.indexOf(nextQuotedValue());
+    }
+
     /**
      * Returns the {@link JsonToken#STRING string} value of the next token,
      * consuming it. If the next token is a number, this method will return its
@@ -752,9 +790,16 @@ public class JsonReader implements Closeable {
         }
 
         if (p == PEEKED_NUMBER) {
-            peekedString = new String(buffer, pos, peekedNumberLength);
+            double result = JsonNumbers.parseDouble(buffer, pos, peekedNumberLength);
+            if (Double.isInfinite(result)) {
+                throw new MalformedJsonException("JSON forbids NaN and infinities: " + result + locationString());
+            }
             pos += peekedNumberLength;
-        } else if (p == PEEKED_DOUBLE_QUOTED) {
+            peeked = PEEKED_NONE;
+            return result;
+        }
+
+        if (p == PEEKED_DOUBLE_QUOTED) {
             peekedString = nextQuotedValue();
         } else if (p != PEEKED_BUFFERED) {
             throw new IllegalStateException("Expected a double but was " + peek() + locationString());
@@ -792,9 +837,21 @@ public class JsonReader implements Closeable {
         }
 
         if (p == PEEKED_NUMBER) {
-            peekedString = new String(buffer, pos, peekedNumberLength);
+            // Too large for the peeked fast case, or has a fraction or exponent
+            double asDouble = JsonNumbers.parseDouble(buffer, pos, peekedNumberLength);
+            long result = (long) asDouble;
+            if (result != asDouble) { // Make sure no precision was lost casting to 'long'.
+                peekedString = new String(buffer, pos, peekedNumberLength);
+                pos += peekedNumberLength;
+                peeked = PEEKED_BUFFERED;
+                throw new NumberFormatException("Expected a long but was " + peekedString + locationString());
+            }
             pos += peekedNumberLength;
-        } else if (p == PEEKED_DOUBLE_QUOTED) {
+            peeked = PEEKED_NONE;
+            return result;
+        }
+
+        if (p == PEEKED_DOUBLE_QUOTED) {
             peekedString = nextQuotedValue();
             try {
                 long result = Long.parseLong(peekedString);
@@ -1021,6 +1078,59 @@ public class JsonReader implements Closeable {
 
     }
 
+    /**
+     * Like {@link #skipValue()}, but arrays and objects are skipped by counting
+     * brackets outside of strings, without tokenizing their contents. Anything
+     * inside the skipped container that is not a bracket or a string is not
+     * validated.
+     */
+    void skipValueUnchecked() throws IOException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        if (p != PEEKED_BEGIN_ARRAY && p != PEEKED_BEGIN_OBJECT) {
+            skipValue();
+            return;
+        }
+        peeked = PEEKED_NONE;
+
+        char[] buffer = this.buffer;
+        int depth = 1;
+        while (true) {
+            int i = pos;
+            int l = limit;
+            while (i < l) {
+                char c = buffer[i++];
+                switch (c) {
+                    case '"' -> {
+                        pos = i;
+                        skipQuotedValue();
+                        i = pos;
+                        l = limit;
+                    }
+                    case '[', '{' -> depth++;
+                    case ']', '}' -> {
+                        if (--depth == 0) {
+                            pos = i;
+                            return;
+                        }
+                    }
+                    case '\n' -> {
+                        lineNumber++;
+                        lineStart = i;
+                    }
+                    default -> {
+                    }
+                }
+            }
+            pos = i;
+            if (!fillBuffer(1)) {
+                throw new EOFException("End of input" + locationString());
+            }
+        }
+    }
+
     private void replace(JsonScope topOfStack) {
         stack.pop();
         stack.push(topOfStack);
@@ -0,0 +1,159 @@
+package be.twofold.playground.json;
+
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * A name or string value that points back into the UTF-8 input of a {@link JsonByteReader}.
+ *
+ * <p>The bytes are only decoded into a {@link String} when {@link #toString()} is called, and the
+ * result is cached. The slice is only valid as long as the underlying input is not modified.
+ */
+public final class JsonSlice {
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+    private final boolean escaped;
+    private String value;
+
+    JsonSlice(ByteBuffer buffer, int offset, int length, boolean escaped) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        this.escaped = escaped;
+    }
+
+    /**
+     * Returns the offset of the first byte in the input, after the opening quote.
+     */
+    public int offset() {
+        return offset;
+    }
+
+    /**
+     * Returns the number of raw bytes, escape sequences are not expanded.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns true if the raw bytes contain escape sequences.
+     */
+    public boolean isEscaped() {
+        return escaped;
+    }
+
+    public byte byteAt(int index) {
+        Objects.checkIndex(index, length);
+        return buffer.get(offset + index);
+    }
+
+    /**
+     * Compares the decoded value to {@code s}. When neither side needs decoding, the bytes are
+     * compared directly, without creating a {@link String}.
+     */
+    public boolean contentEquals(String s) {
+        if (escaped) {
+            return toString().equals(s);
+        }
+        if (s.length() != length) {
+            // Can only be equal when s has non-ASCII characters, which take more than one byte
+            return !isAscii(s) && toString().equals(s);
+        }
+        for (int i = 0; i < length; i++) {
+            byte b = buffer.get(offset + i);
+            char c = s.charAt(i);
+            if (b < 0 || c >= 0x80) {
+                return toString().equals(s);
+            }
+            if (b != c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        if (value == null) {
+            value = decode(buffer, offset, length, escaped);
+        }
+        return value;
+    }
+
+    private static boolean isAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the raw bytes of a string, expanding any escape sequences. The escapes must have been
+     * validated already.
+     */
+    static String decode(ByteBuffer buffer, int offset, int length, boolean escaped) {
+        if (!escaped) {
+            return utf8(buffer, offset, length);
+        }
+
+        StringBuilder builder = new StringBuilder(length);
+        int start = offset;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            if (buffer.get(i) != '\\') {
+                continue;
+            }
+            builder.append(utf8(buffer, start, i - start));
+            byte escape = buffer.get(++i);
+            switch (escape) {
+                case 'u' -> {
+                    builder.append((char) hex(buffer, i + 1));
+                    i += 4;
+                }
+                case 't' -> builder.append('\t');
+                case 'b' -> builder.append('\b');
+                case 'n' -> builder.append('\n');
+                case 'r' -> builder.append('\r');
+                case 'f' -> builder.append('\f');
+                default -> builder.append((char) escape);
+            }
+            start = i + 1;
+        }
+        builder.append(utf8(buffer, start, offset + length - start));
+        return builder.toString();
+    }
+
+    /**
+     * Returns the value of the four hex digits at {@code index}, or -1 if they are not all hex digits.
+     */
+    static int hex(ByteBuffer buffer, int index) {
+        int result = 0;
+        for (int i = index, end = index + 4; i < end; i++) {
+            int c = buffer.get(i);
+            result <<= 4;
+            if (c >= '0' && c <= '9') {
+                result += (c - '0');
+            } else if (c >= 'a' && c <= 'f') {
+                result += (c - 'a' + 10);
+            } else if (c >= 'A' && c <= 'F') {
+                result += (c - 'A' + 10);
+            } else {
+                return -1;
+            }
+        }
+        return result;
+    }
+
+    static String utf8(ByteBuffer buffer, int offset, int length) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
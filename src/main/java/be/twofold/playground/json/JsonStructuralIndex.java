@@ -0,0 +1,194 @@
+package be.twofold.playground.json;
+
+import java.nio.*;
+import java.util.*;
+
+/**
+ * An index of the structural characters ({@code {}[]:,}) outside of strings, built in a single
+ * pass over the input in the style of simdjson's stage 1.
+ *
+ * <p>The input is processed in blocks of 64 bytes. Each block is turned into 64-bit masks of
+ * quotes, backslashes, structural characters and newlines, eight bytes at a time using SWAR.
+ * Escaped quotes are removed from the quote mask, and a prefix xor over the remaining quotes gives
+ * the mask of bytes inside strings, which is carried over from one block to the next.
+ *
+ * <p>Every opening bracket is linked to its closing bracket, so a container can be skipped in
+ * constant time. Newlines are indexed as well, so the line number is known after a jump.
+ */
+final class JsonStructuralIndex {
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    private int[] positions = new int[64];
+    private int[] matches = new int[64];
+    private int size;
+
+    private int[] newlines = new int[16];
+    private int newlineCount;
+
+    private final int fromIndex;
+
+    private JsonStructuralIndex(int fromIndex) {
+        this.fromIndex = fromIndex;
+    }
+
+    /**
+     * Indexes the bytes in {@code [fromIndex, toIndex)} of {@code buffer}.
+     */
+    static JsonStructuralIndex build(ByteBuffer buffer, int fromIndex, int toIndex) {
+        ByteBuffer input = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        JsonStructuralIndex index = new JsonStructuralIndex(fromIndex);
+
+        int[] stack = new int[32];
+        int depth = 0;
+        long escapeCarry = 0;
+        long inStringCarry = 0;
+
+        for (int base = fromIndex; base < toIndex; base += 64) {
+            long quotes = 0;
+            long backslashes = 0;
+            long structurals = 0;
+            long lineFeeds = 0;
+            for (int i = 0; i < 64; i += 8) {
+                long word = getLong(input, base + i, toIndex);
+                long lowered = word | 0x2020202020202020L;
+                quotes |= moveMask(equal(word, '"')) << i;
+                backslashes |= moveMask(equal(word, '\\')) << i;
+                structurals |= moveMask(equal(lowered, '{') | equal(lowered, '}') | equal(word, ':') | equal(word, ',')) << i;
+                lineFeeds |= moveMask(equal(word, '\n')) << i;
+            }
+
+            // A backslash escapes the next byte, unless it is escaped itself
+            long escaped = escapeCarry;
+            escapeCarry = 0;
+            for (long escapes = backslashes & ~escaped; escapes != 0; ) {
+                long bit = escapes & -escapes;
+                escaped |= bit << 1;
+                if (bit == Long.MIN_VALUE) {
+                    escapeCarry = 1;
+                }
+                escapes &= ~(bit | bit << 1);
+            }
+
+            long inString = prefixXor(quotes & ~escaped) ^ inStringCarry;
+            inStringCarry = inString >> 63;
+
+            for (long bits = structurals & ~inString; bits != 0; bits &= bits - 1) {
+                int position = base + Long.numberOfTrailingZeros(bits);
+                int k = index.add(position);
+                switch (input.get(position)) {
+                    case '[', '{' -> {
+                        if (depth == stack.length) {
+                            stack = Arrays.copyOf(stack, depth * 2);
+                        }
+                        stack[depth++] = k;
+                    }
+                    case ']', '}' -> {
+                        // Mismatched brackets are left unlinked, the reader reports those
+                        if (depth > 0 && matchingBrackets(input.get(index.positions[stack[depth - 1]]), input.get(position))) {
+                            index.matches[stack[--depth]] = k;
+                        } else {
+                            depth = 0;
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+
+            for (long bits = lineFeeds; bits != 0; bits &= bits - 1) {
+                index.addNewline(base + Long.numberOfTrailingZeros(bits));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the position of the bracket that closes the one at {@code position},
+     * or -1 if it is not an indexed opening bracket.
+     */
+    int closingPosition(int position) {
+        int k = Arrays.binarySearch(positions, 0, size, position);
+        if (k < 0 || matches[k] < 0) {
+            return -1;
+        }
+        return positions[matches[k]];
+    }
+
+    /**
+     * Returns the number of indexed newlines before {@code position}.
+     */
+    int lineNumber(int position) {
+        int k = Arrays.binarySearch(newlines, 0, newlineCount, position);
+        return k >= 0 ? k : -k - 1;
+    }
+
+    /**
+     * Returns the position after the last newline before {@code position}.
+     */
+    int lineStart(int position) {
+        int line = lineNumber(position);
+        return line == 0 ? fromIndex : newlines[line - 1] + 1;
+    }
+
+    private int add(int position) {
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, size * 2);
+            matches = Arrays.copyOf(matches, size * 2);
+        }
+        positions[size] = position;
+        matches[size] = -1;
+        return size++;
+    }
+
+    private void addNewline(int position) {
+        if (newlineCount == newlines.length) {
+            newlines = Arrays.copyOf(newlines, newlineCount * 2);
+        }
+        newlines[newlineCount++] = position;
+    }
+
+    private static boolean matchingBrackets(byte open, byte close) {
+        return open == '[' ? close == ']' : close == '}';
+    }
+
+    /**
+     * Returns 0x80 in every byte that equals {@code value}, without false positives.
+     */
+    private static long equal(long word, char value) {
+        long input = word ^ (ONES * value);
+        long zero = (input & LOW_BITS) + LOW_BITS;
+        return ~(zero | input | LOW_BITS);
+    }
+
+    /**
+     * Gathers the high bit of every byte into the low 8 bits, byte i ends up in bit i.
+     */
+    private static long moveMask(long word) {
+        return ((word >>> 7) * 0x0102040810204080L) >>> 56;
+    }
+
+    /**
+     * Bit i of the result is the xor of bits 0 to i, so quote pairs turn into runs of ones.
+     */
+    private static long prefixXor(long bits) {
+        bits ^= bits << 1;
+        bits ^= bits << 2;
+        bits ^= bits << 4;
+        bits ^= bits << 8;
+        bits ^= bits << 16;
+        bits ^= bits << 32;
+        return bits;
+    }
+
+    private static long getLong(ByteBuffer buffer, int index, int limit) {
+        if (index + Long.BYTES <= limit) {
+            return buffer.getLong(index);
+        }
+        long word = 0;
+        for (int i = limit - 1; i >= index; i--) {
+            word = word << 8 | (buffer.get(i) & 0xFF);
+        }
+        return word;
+    }
+}
@@ -30,6 +30,14 @@ public sealed interface JsonValue {
             this.value = value;
         }
 
+        static JsonBoolean of(boolean value) {
+            return value ? TRUE : FALSE;
+        }
+
+        public boolean value() {
+            return value;
+        }
+
         @Override
         public boolean equals(Object obj) {
             return obj instanceof JsonBoolean other
@@ -43,21 +51,69 @@ public sealed interface JsonValue {
     }
 
     final class JsonNumber implements JsonValue {
-        private final Number value;
+        private Number value;
+        private final String text;
 
         JsonNumber(Number value) {
             this.value = Objects.requireNonNull(value);
+            this.text = null;
+        }
+
+        /**
+         * Keeps the literal as is, it's only parsed when the value is requested.
+         */
+        JsonNumber(String text) {
+            this.text = Objects.requireNonNull(text);
+        }
+
+        public Number value() {
+            if (value == null) {
+                value = parse(text);
+            }
+            return value;
+        }
+
+        public long longValue() {
+            return value().longValue();
+        }
+
+        public double doubleValue() {
+            return value().doubleValue();
+        }
+
+        /**
+         * Returns the literal this number was parsed from, or {@code null} if it was created from a value.
+         */
+        String text() {
+            return text;
+        }
+
+        private static Number parse(String text) {
+            boolean integral = text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0;
+            if (integral) {
+                try {
+                    return Long.parseLong(text);
+                } catch (NumberFormatException ignored) {
+                    // Too large, fall back to a double
+                }
+            }
+            return Double.parseDouble(text);
         }
 
         @Override
         public boolean equals(Object obj) {
             return obj instanceof JsonNumber other
-                && value.equals(other.value);
+                && value().equals(other.value());
         }
 
         @Override
         public int hashCode() {
-            return value.hashCode();
+            return value().hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return text != null ? text : value.toString();
         }
     }
 
@@ -68,6 +124,10 @@ public sealed interface JsonValue {
             this.value = Objects.requireNonNull(value);
         }
 
+        public String value() {
+            return value;
+        }
+
         @Override
         public boolean equals(Object obj) {
             return obj instanceof JsonString other
@@ -81,25 +141,44 @@ public sealed interface JsonValue {
     }
 
     final class JsonArray implements JsonValue {
-        private final List<JsonValue> values;
+        private final JsonValue[] values;
 
         public JsonArray(List<JsonValue> values) {
-            this.values = List.copyOf(values);
+            this(values.toArray(JsonValue[]::new));
+        }
+
+        JsonArray(JsonValue[] values) {
+            for (JsonValue value : values) {
+                Objects.requireNonNull(value, "value must not be null");
+            }
+            this.values = values;
         }
 
         public static Builder builder() {
             return new Builder();
         }
 
+        public int size() {
+            return values.length;
+        }
+
+        public JsonValue get(int index) {
+            return values[index];
+        }
+
+        public List<JsonValue> values() {
+            return Collections.unmodifiableList(Arrays.asList(values));
+        }
+
         @Override
         public boolean equals(Object obj) {
             return obj instanceof JsonArray other
-                && values.equals(other.values);
+                && Arrays.equals(values, other.values);
         }
 
         @Override
         public int hashCode() {
-            return values.hashCode();
+            return Arrays.hashCode(values);
         }
 
         public static final class Builder {
@@ -116,43 +195,134 @@ public sealed interface JsonValue {
         }
     }
 
+    /**
+     * Keys and values are kept in two flat arrays. Small objects are searched
+     * linearly, larger ones get an open addressing index of key positions.
+     */
     final class JsonObject implements JsonValue {
-        private final Map<String, JsonValue> values;
-
-        private JsonObject(Map<String, JsonValue> values) {
-            this.values = Map.copyOf(values);
+        private static final int LINEAR_SCAN_LIMIT = 8;
+
+        private final String[] keys;
+        private final JsonValue[] values;
+        private final int[] index;
+
+        JsonObject(String[] keys, JsonValue[] values) {
+            this.keys = keys;
+            this.values = values;
+            this.index = keys.length > LINEAR_SCAN_LIMIT ? new int[Integer.highestOneBit(keys.length * 2 - 1) << 1] : null;
+
+            for (int i = 0; i < keys.length; i++) {
+                Objects.requireNonNull(keys[i], "key must not be null");
+                Objects.requireNonNull(values[i], "value must not be null");
+                if (index != null ? !insert(i) : indexOf(keys[i], i) >= 0) {
+                    throw new IllegalArgumentException("Duplicate key: " + keys[i]);
+                }
+            }
         }
 
         public static Builder builder() {
             return new Builder();
         }
 
+        public int size() {
+            return keys.length;
+        }
+
+        /**
+         * Returns the value for {@code key}, or {@code null} if there is none.
+         */
+        public JsonValue get(String key) {
+            int i = indexOf(key, keys.length);
+            return i >= 0 ? values[i] : null;
+        }
+
+        public boolean containsKey(String key) {
+            return indexOf(key, keys.length) >= 0;
+        }
+
+        public List<String> keys() {
+            return Collections.unmodifiableList(Arrays.asList(keys));
+        }
+
+        String keyAt(int index) {
+            return keys[index];
+        }
+
+        JsonValue valueAt(int index) {
+            return values[index];
+        }
+
+        private int indexOf(String key, int length) {
+            if (index == null) {
+                for (int i = 0; i < length; i++) {
+                    if (keys[i].equals(key)) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+
+            int mask = index.length - 1;
+            for (int slot = spread(key.hashCode()) & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+                int i = index[slot] - 1;
+                if (keys[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private boolean insert(int i) {
+            int mask = index.length - 1;
+            int slot = spread(keys[i].hashCode()) & mask;
+            for (; index[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[index[slot] - 1].equals(keys[i])) {
+                    return false;
+                }
+            }
+            index[slot] = i + 1;
+            return true;
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
         @Override
         public boolean equals(Object obj) {
-            return obj instanceof JsonObject other
-                && values.equals(other.values);
+            if (!(obj instanceof JsonObject other) || keys.length != other.keys.length) {
+                return false;
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (!values[i].equals(other.get(keys[i]))) {
+                    return false;
+                }
+            }
+            return true;
         }
 
         @Override
         public int hashCode() {
-            return values.hashCode();
+            // Same as Map.hashCode(), independent of the order of the keys
+            int result = 0;
+            for (int i = 0; i < keys.length; i++) {
+                result += keys[i].hashCode() ^ values[i].hashCode();
+            }
+            return result;
         }
 
         public static final class Builder {
-            private final Map<String, JsonValue> values = new HashMap<>();
+            private final List<String> keys = new ArrayList<>();
+            private final List<JsonValue> values = new ArrayList<>();
 
             public Builder add(String key, JsonValue value) {
-                Objects.requireNonNull(key, "key must not be null");
-                Objects.requireNonNull(value, "value must not be null");
-                if (values.containsKey(key)) {
-                    throw new IllegalArgumentException("Duplicate key: " + key);
-                }
-                values.put(key, value);
+                keys.add(Objects.requireNonNull(key, "key must not be null"));
+                values.add(Objects.requireNonNull(value, "value must not be null"));
                 return this;
             }
 
             public JsonObject build() {
-                return new JsonObject(values);
+                return new JsonObject(keys.toArray(String[]::new), values.toArray(JsonValue[]::new));
             }
         }
     }
@@ -0,0 +1,534 @@
+package be.twofold.playground.json;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * Writes a JSON (<a href="http://www.ietf.org/rfc/rfc7159.txt">RFC 7159</a>)
+ * encoded value as UTF-8, one token at a time. This is the counterpart of
+ * {@link JsonReader} and {@link JsonByteReader}.
+ *
+ * <p>The output goes into a byte buffer. Without a channel the buffer grows
+ * as needed, and the result is taken out with {@link #toByteArray()}. With a
+ * channel the buffer has a fixed size and is drained into the channel whenever
+ * it fills up. In both cases {@link #reset()} allows the writer, and its
+ * buffer, to be reused for the next document.
+ *
+ * <p>Strings that are plain ASCII are copied without any encoding step, and
+ * numbers are formatted straight into the buffer. Trees of {@link JsonValue}
+ * are written iteratively, so deep nesting doesn't overflow the stack.
+ *
+ * <pre>{@code
+ * JsonWriter writer = new JsonWriter();
+ * writer.beginObject()
+ *     .name("id").value(912345678901L)
+ *     .name("geo").beginArray().value(50.454722).value(-104.606667).endArray()
+ *     .endObject();
+ * byte[] json = writer.toByteArray();
+ * }</pre>
+ *
+ * <p>Instances of this class are not thread safe.
+ */
+public final class JsonWriter implements Closeable, Flushable {
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * Longest output for a single char, a {@code \}{@code uXXXX} escape or a surrogate pair.
+     */
+    private static final int MAX_CHAR_BYTES = 6;
+    private static final int MAX_LONG_BYTES = 20;
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The char written after the backslash for every ASCII char that needs escaping, 'u' for
+     * the ones without a short form, and 0 for the ones that are written as is.
+     */
+    private static final byte[] ESCAPES = new byte[128];
+
+    static {
+        for (int i = 0; i < 0x20; i++) {
+            ESCAPES[i] = 'u';
+        }
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+        ESCAPES['\t'] = 't';
+        ESCAPES['\b'] = 'b';
+        ESCAPES['\n'] = 'n';
+        ESCAPES['\r'] = 'r';
+        ESCAPES['\f'] = 'f';
+    }
+
+    private final WritableByteChannel channel;
+    private byte[] buffer;
+    private int count;
+
+    private JsonScope[] stack = new JsonScope[32];
+    private int depth;
+    private boolean closed;
+
+    // Reused by value(JsonValue) to walk trees without recursion
+    private JsonValue[] containers = new JsonValue[16];
+    private int[] positions = new int[16];
+
+    /**
+     * Creates a writer that collects the output in a growable buffer.
+     */
+    public JsonWriter() {
+        this.channel = null;
+        this.buffer = new byte[DEFAULT_BUFFER_SIZE];
+        stack[depth++] = JsonScope.EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Creates a writer that writes to {@code channel} through a buffer of the default size.
+     */
+    public JsonWriter(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    public JsonWriter(WritableByteChannel channel, int bufferSize) {
+        if (bufferSize < MAX_LONG_BYTES) {
+            throw new IllegalArgumentException("bufferSize must be at least " + MAX_LONG_BYTES);
+        }
+        this.channel = Objects.requireNonNull(channel, "channel must not be null");
+        this.buffer = new byte[bufferSize];
+        stack[depth++] = JsonScope.EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Begins encoding a new array. Each call to this method must be paired with
+     * a call to {@link #endArray}.
+     */
+    public JsonWriter beginArray() throws IOException {
+        return open(JsonScope.EMPTY_ARRAY, '[');
+    }
+
+    /**
+     * Ends encoding the current array.
+     */
+    public JsonWriter endArray() throws IOException {
+        return close(JsonScope.EMPTY_ARRAY, JsonScope.NONEMPTY_ARRAY, ']');
+    }
+
+    /**
+     * Begins encoding a new object. Each call to this method must be paired
+     * with a call to {@link #endObject}.
+     */
+    public JsonWriter beginObject() throws IOException {
+        return open(JsonScope.EMPTY_OBJECT, '{');
+    }
+
+    /**
+     * Ends encoding the current object.
+     */
+    public JsonWriter endObject() throws IOException {
+        return close(JsonScope.EMPTY_OBJECT, JsonScope.NONEMPTY_OBJECT, '}');
+    }
+
+    /**
+     * Encodes the property name.
+     */
+    public JsonWriter name(String name) throws IOException {
+        Objects.requireNonNull(name, "name must not be null");
+        JsonScope scope = peek();
+        if (scope == JsonScope.NONEMPTY_OBJECT) {
+            writeByte(',');
+        } else if (scope != JsonScope.EMPTY_OBJECT) {
+            throw new IllegalStateException("Nesting problem.");
+        }
+        writeString(name);
+        replaceTop(JsonScope.DANGLING_NAME);
+        return this;
+    }
+
+    /**
+     * Encodes {@code value}, or {@code null} if it is null.
+     */
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeString(value);
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        beforeValue();
+        writeAscii("null");
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        writeAscii(value ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    /**
+     * Encodes {@code value}, which must be finite.
+     */
+    public JsonWriter value(double value) throws IOException {
+        checkFinite(value);
+        beforeValue();
+        writeDouble(value);
+        return this;
+    }
+
+    /**
+     * Encodes {@code value}, or {@code null} if it is null. Integral types and
+     * floating point types are formatted directly, other numbers use their
+     * {@link Object#toString()}.
+     */
+    public JsonWriter value(Number value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return value(value.longValue());
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return value(value.doubleValue());
+        }
+
+        String text = value.toString();
+        if (text.equals("NaN") || text.equals("Infinity") || text.equals("-Infinity")) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + text);
+        }
+        beforeValue();
+        writeAscii(text);
+        return this;
+    }
+
+    /**
+     * Encodes a complete tree.
+     */
+    public JsonWriter value(JsonValue value) throws IOException {
+        Objects.requireNonNull(value, "value must not be null");
+        int top = 0;
+        for (JsonValue current = value; current != null; ) {
+            switch (current) {
+                case JsonValue.JsonNull ignored -> nullValue();
+                case JsonValue.JsonBoolean b -> value(b.value());
+                case JsonValue.JsonString s -> value(s.value());
+                case JsonValue.JsonNumber n -> {
+                    if (n.text() != null) {
+                        // Already a valid JSON number, as it came out of a reader
+                        beforeValue();
+                        writeAscii(n.text());
+                    } else {
+                        value(n.value());
+                    }
+                }
+                case JsonValue.JsonArray a -> {
+                    beginArray();
+                    top = pushContainer(top, a);
+                }
+                case JsonValue.JsonObject o -> {
+                    beginObject();
+                    top = pushContainer(top, o);
+                }
+            }
+
+            // Move on to the next value, closing every container that is done
+            current = null;
+            while (top > 0 && current == null) {
+                int i = positions[top - 1]++;
+                switch (containers[top - 1]) {
+                    case JsonValue.JsonArray a when i < a.size() -> current = a.get(i);
+                    case JsonValue.JsonObject o when i < o.size() -> {
+                        name(o.keyAt(i));
+                        current = o.valueAt(i);
+                    }
+                    case JsonValue.JsonArray ignored -> {
+                        endArray();
+                        containers[--top] = null;
+                    }
+                    case JsonValue.JsonObject ignored -> {
+                        endObject();
+                        containers[--top] = null;
+                    }
+                    default -> throw new IllegalStateException();
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Writes any buffered output to the channel. Does nothing without a channel.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        ByteBuffer source = ByteBuffer.wrap(buffer, 0, count);
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+        count = 0;
+    }
+
+    /**
+     * Flushes and closes the channel, if any. The channel is closed even if
+     * the document is incomplete. Closing again has no effect.
+     *
+     * @throws IOException if the document is incomplete
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+            if (depth > 1 || peek() != JsonScope.NONEMPTY_DOCUMENT) {
+                throw new IOException("Incomplete document");
+            }
+        } finally {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Discards the buffered output and the nesting state, so the next document can be written
+     * into the same buffer.
+     */
+    public void reset() {
+        count = 0;
+        Arrays.fill(stack, 0, depth, null);
+        depth = 0;
+        stack[depth++] = JsonScope.EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Returns the number of buffered bytes.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns a copy of the buffered bytes.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    /**
+     * Returns the buffered bytes decoded as UTF-8.
+     */
+    @Override
+    public String toString() {
+        return new String(buffer, 0, count, StandardCharsets.UTF_8);
+    }
+
+    private JsonWriter open(JsonScope empty, char bracket) throws IOException {
+        beforeValue();
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth++] = empty;
+        writeByte(bracket);
+        return this;
+    }
+
+    private JsonWriter close(JsonScope empty, JsonScope nonempty, char bracket) throws IOException {
+        JsonScope scope = peek();
+        if (scope != empty && scope != nonempty) {
+            throw new IllegalStateException("Nesting problem.");
+        }
+        stack[--depth] = null;
+        writeByte(bracket);
+        return this;
+    }
+
+    private JsonScope peek() {
+        if (depth == 0) {
+            throw new IllegalStateException("JsonWriter is closed.");
+        }
+        return stack[depth - 1];
+    }
+
+    private void replaceTop(JsonScope scope) {
+        stack[depth - 1] = scope;
+    }
+
+    private void beforeValue() throws IOException {
+        switch (peek()) {
+            case EMPTY_DOCUMENT -> replaceTop(JsonScope.NONEMPTY_DOCUMENT);
+            case NONEMPTY_DOCUMENT -> throw new IllegalStateException("JSON must have only one top-level value.");
+            case EMPTY_ARRAY -> replaceTop(JsonScope.NONEMPTY_ARRAY);
+            case NONEMPTY_ARRAY -> writeByte(',');
+            case DANGLING_NAME -> {
+                writeByte(':');
+                replaceTop(JsonScope.NONEMPTY_OBJECT);
+            }
+            default -> throw new IllegalStateException("Nesting problem.");
+        }
+    }
+
+    private int pushContainer(int top, JsonValue container) {
+        if (top == containers.length) {
+            containers = Arrays.copyOf(containers, top * 2);
+            positions = Arrays.copyOf(positions, top * 2);
+        }
+        containers[top] = container;
+        positions[top] = 0;
+        return top + 1;
+    }
+
+    private static void checkFinite(double value) {
+        if (!Double.isFinite(value)) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        }
+    }
+
+    private void writeString(String s) throws IOException {
+        writeByte('"');
+        int length = s.length();
+        for (int i = 0; i < length; ) {
+            // Copy as many plain ASCII chars as fit in the buffer in one go
+            int end = Math.min(length, i + buffer.length - count);
+            byte[] buffer = this.buffer;
+            int count = this.count;
+            for (char c; i < end && (c = s.charAt(i)) < 0x80 && ESCAPES[c] == 0; i++) {
+                buffer[count++] = (byte) c;
+            }
+            this.count = count;
+
+            if (i == end) {
+                ensureCapacity(1);
+            } else {
+                i = writeChar(s, i);
+            }
+        }
+        writeByte('"');
+    }
+
+    /**
+     * Writes the char at {@code index}, which needs escaping or encoding, and returns the index of
+     * the next char.
+     */
+    private int writeChar(String s, int index) throws IOException {
+        ensureCapacity(MAX_CHAR_BYTES);
+        char c = s.charAt(index);
+        if (c < 0x80) {
+            byte escape = ESCAPES[c];
+            if (escape == 'u') {
+                writeUnicodeEscape(c);
+            } else {
+                buffer[count++] = '\\';
+                buffer[count++] = escape;
+            }
+        } else if (c < 0x800) {
+            buffer[count++] = (byte) (0xC0 | c >> 6);
+            buffer[count++] = (byte) (0x80 | c & 0x3F);
+        } else if (!Character.isSurrogate(c)) {
+            buffer[count++] = (byte) (0xE0 | c >> 12);
+            buffer[count++] = (byte) (0x80 | c >> 6 & 0x3F);
+            buffer[count++] = (byte) (0x80 | c & 0x3F);
+        } else if (Character.isHighSurrogate(c) && index + 1 < s.length() && Character.isLowSurrogate(s.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, s.charAt(index + 1));
+            buffer[count++] = (byte) (0xF0 | codePoint >> 18);
+            buffer[count++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+            buffer[count++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            buffer[count++] = (byte) (0x80 | codePoint & 0x3F);
+            return index + 2;
+        } else {
+            // A lone surrogate has no UTF-8 encoding, but it can be escaped
+            writeUnicodeEscape(c);
+        }
+        return index + 1;
+    }
+
+    private void writeUnicodeEscape(char c) {
+        buffer[count++] = '\\';
+        buffer[count++] = 'u';
+        buffer[count++] = HEX[c >> 12];
+        buffer[count++] = HEX[c >> 8 & 0xF];
+        buffer[count++] = HEX[c >> 4 & 0xF];
+        buffer[count++] = HEX[c & 0xF];
+    }
+
+    private void writeLong(long value) throws IOException {
+        ensureCapacity(MAX_LONG_BYTES);
+        if (value == Long.MIN_VALUE) {
+            System.arraycopy(MIN_LONG, 0, buffer, count, MIN_LONG.length);
+            count += MIN_LONG.length;
+            return;
+        }
+        if (value < 0) {
+            buffer[count++] = '-';
+            value = -value;
+        }
+
+        int digits = 1;
+        for (long bound = 10; digits < 19 && value >= bound; bound *= 10) {
+            digits++;
+        }
+        int end = count + digits;
+        for (int i = end - 1; i >= count; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        count = end;
+    }
+
+    private void writeDouble(double value) throws IOException {
+        // Whole numbers are common, and don't need the shortest repr search
+        if (value == (long) value && Math.abs(value) < 0x1p53 && (value != 0 || 1 / value > 0)) {
+            writeLong((long) value);
+            ensureCapacity(2);
+            buffer[count++] = '.';
+            buffer[count++] = '0';
+            return;
+        }
+        writeAscii(Double.toString(value));
+    }
+
+    /**
+     * Writes a string that is known to be ASCII, without any escaping.
+     */
+    private void writeAscii(String s) throws IOException {
+        int length = s.length();
+        for (int i = 0; i < length; ) {
+            ensureCapacity(1);
+            int end = Math.min(length, i + buffer.length - count);
+            while (i < end) {
+                buffer[count++] = (byte) s.charAt(i++);
+            }
+        }
+    }
+
+    private void writeByte(char c) throws IOException {
+        ensureCapacity(1);
+        buffer[count++] = (byte) c;
+    }
+
+    private void ensureCapacity(int n) throws IOException {
+        if (buffer.length - count >= n) {
+            return;
+        }
+        if (channel != null) {
+            flush();
+        } else {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + n));
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package be.twofold.playground.json;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * Reads newline delimited JSON, where every line is a separate document, and
+ * parses the lines in parallel.
+ *
+ * <p>The input is cut into batches of whole lines. Every batch is parsed as a
+ * single task, reusing one {@link JsonByteReader} for all of its lines. At most
+ * a fixed number of batches are in flight, so memory use stays bounded no
+ * matter how large the input is.
+ *
+ * <p>The results are passed to the consumer on the calling thread, either in
+ * input order, or in the order the batches complete when {@code ordered} is
+ * disabled. Blank lines are skipped. Errors report the line number in the
+ * whole input.
+ *
+ * <pre>{@code
+ * NdJsonReader<Event> reader = NdJsonReader.builder(EventParser::read)
+ *     .executor(Executors.newVirtualThreadPerTaskExecutor())
+ *     .build();
+ * reader.read(path, events::add);
+ * }</pre>
+ */
+public final class NdJsonReader<T> {
+    private static final int DEFAULT_BATCH_SIZE = 1024 * 1024;
+
+    private final DocumentParser<? extends T> parser;
+    private final ExecutorService executor;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final boolean ordered;
+
+    private NdJsonReader(Builder<T> builder) {
+        this.parser = builder.parser;
+        this.executor = builder.executor;
+        this.batchSize = builder.batchSize;
+        this.maxInFlight = builder.maxInFlight;
+        this.ordered = builder.ordered;
+    }
+
+    public static <T> Builder<T> builder(DocumentParser<? extends T> parser) {
+        return new Builder<>(parser);
+    }
+
+    public void read(Path path, Consumer<? super T> consumer) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            read(in, consumer);
+        }
+    }
+
+    public void read(InputStream in, Consumer<? super T> consumer) throws IOException {
+        if (executor != null) {
+            read(in, consumer, executor);
+            return;
+        }
+        try (ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors())) {
+            read(in, consumer, pool);
+        }
+    }
+
+    private void read(InputStream in, Consumer<? super T> consumer, ExecutorService pool) throws IOException {
+        Deque<Future<List<T>>> pending = new ArrayDeque<>();
+        // Only used when unordered, otherwise nothing would drain its queue of completed batches
+        CompletionService<List<T>> completion = ordered ? null : new ExecutorCompletionService<>(pool);
+        try {
+            Splitter splitter = new Splitter(in, batchSize);
+            for (Batch batch; (batch = splitter.next()) != null; ) {
+                Batch current = batch;
+                Callable<List<T>> task = () -> parse(current);
+                pending.add(ordered ? pool.submit(task) : completion.submit(task));
+                if (pending.size() >= maxInFlight) {
+                    deliver(pending, completion, consumer);
+                }
+            }
+            while (!pending.isEmpty()) {
+                deliver(pending, completion, consumer);
+            }
+        } finally {
+            pending.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private void deliver(Deque<Future<List<T>>> pending, CompletionService<List<T>> completion, Consumer<? super T> consumer) throws IOException {
+        try {
+            Future<List<T>> future;
+            if (ordered) {
+                future = pending.removeFirst();
+            } else {
+                future = completion.take();
+                pending.remove(future);
+            }
+            future.get().forEach(consumer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private List<T> parse(Batch batch) throws IOException {
+        List<T> results = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap(batch.array, 0, batch.length);
+        JsonByteReader reader = new JsonByteReader(new byte[0]);
+
+        byte[] array = batch.array;
+        int line = batch.firstLine;
+        for (int from = 0, to; from < batch.length; from = to + 1, line++) {
+            to = from;
+            while (to < batch.length && array[to] != '\n') {
+                to++;
+            }
+            if (isBlank(array, from, to)) {
+                continue;
+            }
+
+            reader.reset(buffer, from, to, line);
+            results.add(parser.parse(reader));
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new MalformedJsonException("Expected end of line" + reader.locationString());
+            }
+        }
+        return results;
+    }
+
+    private static boolean isBlank(byte[] array, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = array[i];
+            if (b != ' ' && b != '\t' && b != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a single document. Every call gets a reader that is positioned at
+     * the start of a line, and should consume exactly one value.
+     */
+    @FunctionalInterface
+    public interface DocumentParser<T> {
+        T parse(JsonByteReader reader) throws IOException;
+    }
+
+    /**
+     * Whole lines of the input, starting at the zero-based line {@code firstLine}.
+     */
+    private record Batch(byte[] array, int length, int firstLine) {
+    }
+
+    /**
+     * Cuts a stream into batches that end on a newline. The partial line at the
+     * end of a read is carried over to the next batch.
+     */
+    private static final class Splitter {
+        private final InputStream in;
+        private final int batchSize;
+        private byte[] carry = new byte[0];
+        private int carryLength;
+        private int lineNumber;
+        private boolean eof;
+
+        Splitter(InputStream in, int batchSize) {
+            this.in = in;
+            this.batchSize = batchSize;
+        }
+
+        Batch next() throws IOException {
+            if (eof && carryLength == 0) {
+                return null;
+            }
+
+            byte[] array = new byte[Math.max(batchSize, carryLength * 2)];
+            System.arraycopy(carry, 0, array, 0, carryLength);
+            int length = carryLength;
+            while (true) {
+                int read = eof ? 0 : in.readNBytes(array, length, array.length - length);
+                length += read;
+                eof |= length < array.length;
+
+                if (eof) {
+                    // The last line doesn't need a newline
+                    carryLength = 0;
+                    return length == 0 ? null : new Batch(array, length, lineNumber);
+                }
+
+                int end = lastIndexOf(array, length, (byte) '\n') + 1;
+                if (end > 0) {
+                    carryLength = length - end;
+                    if (carry.length < carryLength) {
+                        carry = new byte[carryLength];
+                    }
+                    System.arraycopy(array, end, carry, 0, carryLength);
+                    Batch batch = new Batch(array, end, lineNumber);
+                    lineNumber += count(array, end, (byte) '\n');
+                    return batch;
+                }
+
+                // A single line longer than the batch, grow until it fits
+                array = Arrays.copyOf(array, array.length * 2);
+            }
+        }
+
+        private static int count(byte[] array, int length, byte value) {
+            int count = 0;
+            for (int i = 0; i < length; i++) {
+                if (array[i] == value) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private static int lastIndexOf(byte[] array, int length, byte value) {
+            for (int i = length - 1; i >= 0; i--) {
+                if (array[i] == value) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    public static final class Builder<T> {
+        private final DocumentParser<? extends T> parser;
+        private ExecutorService executor;
+        private int batchSize = DEFAULT_BATCH_SIZE;
+        private int maxInFlight = 2 * Runtime.getRuntime().availableProcessors();
+        private boolean ordered = true;
+
+        private Builder(DocumentParser<? extends T> parser) {
+            this.parser = Objects.requireNonNull(parser, "parser must not be null");
+        }
+
+        /**
+         * Runs the batches on {@code executor}, which is not shut down afterwards.
+         * By default a fixed pool with one thread per processor is used for each read.
+         */
+        public Builder<T> executor(ExecutorService executor) {
+            this.executor = Objects.requireNonNull(executor, "executor must not be null");
+            return this;
+        }
+
+        public Builder<T> batchSize(int batchSize) {
+            if (batchSize <= 0) {
+                throw new IllegalArgumentException("batchSize must be positive");
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        public Builder<T> maxInFlight(int maxInFlight) {
+            if (maxInFlight <= 0) {
+                throw new IllegalArgumentException("maxInFlight must be positive");
+            }
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        public Builder<T> ordered(boolean ordered) {
+            this.ordered = ordered;
+            return this;
+        }
+
+        public NdJsonReader<T> build() {
+            return new NdJsonReader<>(this);
+        }
+    }
+}
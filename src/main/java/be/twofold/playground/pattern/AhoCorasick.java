@@ -0,0 +1,141 @@
+package be.twofold.playground.pattern;
+
+import java.util.*;
+
+/**
+ * Finds which of a set of literals occur in a text, in one pass over the text (Aho-Corasick).
+ *
+ * <p>The literals form a trie. Every node also links to the node of its longest proper suffix
+ * that is in the trie, so when the next character doesn't continue a literal, the search falls
+ * back along those links instead of starting over.
+ */
+final class AhoCorasick {
+    private final char[][] keys;
+    private final int[][] targets;
+    private final int[] fail;
+
+    // The ids of the literals that end at a node, and the next node on the fail chain that has any
+    private final int[][] outputs;
+    private final int[] outputLink;
+
+    // The transitions of the root for ASCII, where most searches spend their time
+    private final int[] rootAscii = new int[128];
+
+    AhoCorasick(List<String> literals, int[] ids) {
+        List<Map<Character, Integer>> trie = new ArrayList<>();
+        List<int[]> ends = new ArrayList<>();
+        trie.add(new HashMap<>());
+        ends.add(new int[0]);
+        for (int k = 0; k < literals.size(); k++) {
+            String literal = literals.get(k);
+            int node = 0;
+            for (int i = 0; i < literal.length(); i++) {
+                Integer next = trie.get(node).get(literal.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.get(node).put(literal.charAt(i), next);
+                    trie.add(new HashMap<>());
+                    ends.add(new int[0]);
+                }
+                node = next;
+            }
+            int[] end = ends.get(node);
+            end = Arrays.copyOf(end, end.length + 1);
+            end[end.length - 1] = ids[k];
+            ends.set(node, end);
+        }
+
+        int size = trie.size();
+        keys = new char[size][];
+        targets = new int[size][];
+        outputs = ends.toArray(new int[0][]);
+        for (int node = 0; node < size; node++) {
+            Map<Character, Integer> edges = new TreeMap<>(trie.get(node));
+            keys[node] = new char[edges.size()];
+            targets[node] = new int[edges.size()];
+            int e = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                keys[node][e] = edge.getKey();
+                targets[node][e++] = edge.getValue();
+            }
+        }
+
+        // Breadth first, so the fail link of a parent is known before its children
+        fail = new int[size];
+        outputLink = new int[size];
+        outputLink[0] = -1;
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[0]) {
+            outputLink[child] = outputs[0].length != 0 ? 0 : -1;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.remove();
+            for (int e = 0; e < keys[node].length; e++) {
+                char c = keys[node][e];
+                int child = targets[node][e];
+                int f = fail[node];
+                int next;
+                while ((next = next(f, c)) < 0 && f != 0) {
+                    f = fail[f];
+                }
+                fail[child] = next < 0 ? 0 : next;
+                outputLink[child] = outputs[fail[child]].length != 0 ? fail[child] : outputLink[fail[child]];
+                queue.add(child);
+            }
+        }
+
+        Arrays.fill(rootAscii, -1);
+        for (int e = 0; e < keys[0].length && keys[0][e] < 128; e++) {
+            rootAscii[keys[0][e]] = targets[0][e];
+        }
+    }
+
+    /**
+     * Sets the id of every literal that occurs in {@code seq}.
+     */
+    void matches(CharSequence seq, BitSet ids) {
+        // The empty literal is at the root
+        report(0, ids);
+        int node = 0;
+        for (int i = 0, length = seq.length(); i < length; i++) {
+            char c = seq.charAt(i);
+            int next;
+            if (node == 0) {
+                next = c < 128 ? rootAscii[c] : next(0, c);
+            } else {
+                while ((next = next(node, c)) < 0 && node != 0) {
+                    node = fail[node];
+                }
+            }
+            node = next < 0 ? 0 : next;
+            report(node, ids);
+        }
+    }
+
+    private void report(int node, BitSet ids) {
+        if (outputs[node].length == 0) {
+            node = outputLink[node];
+        }
+        for (; node >= 0; node = outputLink[node]) {
+            for (int id : outputs[node]) {
+                ids.set(id);
+            }
+        }
+    }
+
+    private int next(int node, char c) {
+        char[] edges = keys[node];
+        int index = edges.length < 8 ? linear(edges, c) : Arrays.binarySearch(edges, c);
+        return index < 0 ? -1 : targets[node][index];
+    }
+
+    private static int linear(char[] edges, char c) {
+        for (int i = 0; i < edges.length; i++) {
+            if (edges[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -28,9 +28,20 @@ package be.twofold.playground.pattern;
 import be.twofold.playground.pattern.Pattern.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 class CharPredicates {
 
+    /**
+     * The lookup tables of the properties that have been used.
+     */
+    private static final Map<String, CharPredicate> TABLES = new ConcurrentHashMap<>();
+
+    /**
+     * The code point ranges of the Unicode blocks that have been used.
+     */
+    private static final Map<Character.UnicodeBlock, CharPredicate> BLOCKS = new ConcurrentHashMap<>();
+
     static CharPredicate ALPHABETIC() {
         return Character::isAlphabetic;
     }
@@ -251,9 +262,9 @@ class CharPredicates {
     public static CharPredicate forUnicodeProperty(String propName, boolean caseIns) {
         propName = propName.toUpperCase(Locale.ROOT);
         CharPredicate p = getUnicodePredicate(propName, caseIns);
-        if (p != null)
-            return p;
-        return getPosixPredicate(propName, caseIns);
+        if (p == null)
+            p = getPosixPredicate(propName, caseIns);
+        return table("Is" + propName + ":" + caseIns, p);
     }
 
     /////////////////////////////////////////////////////////////////////////////
@@ -266,7 +277,7 @@ class CharPredicates {
         final Character.UnicodeScript script;
         try {
             script = Character.UnicodeScript.forName(name);
-            return ch -> script == Character.UnicodeScript.of(ch);
+            return table("sc=" + script, ch -> script == Character.UnicodeScript.of(ch));
         } catch (IllegalArgumentException ignored) {
         }
         return null;
@@ -279,17 +290,44 @@ class CharPredicates {
         final Character.UnicodeBlock block;
         try {
             block = Character.UnicodeBlock.forName(name);
-            return ch -> block == Character.UnicodeBlock.of(ch);
+            return BLOCKS.computeIfAbsent(block, CharPredicates::blockRange);
         } catch (IllegalArgumentException ignored) {
         }
         return null;
     }
 
+    /**
+     * Returns a range over the code points of a block. Blocks are contiguous and start and end on
+     * a multiple of 16, so it's enough to look at every 16th code point.
+     */
+    private static CharPredicate blockRange(Character.UnicodeBlock block) {
+        int cp = 0;
+        while (cp <= Character.MAX_CODE_POINT && Character.UnicodeBlock.of(cp) != block) {
+            cp += 16;
+        }
+        if (cp > Character.MAX_CODE_POINT) {
+            // A deprecated block, like SURROGATES_AREA, that no code point belongs to
+            return (BmpCharPredicate) ch -> false;
+        }
+        int lower = cp;
+        while (cp <= Character.MAX_CODE_POINT && Character.UnicodeBlock.of(cp) == block) {
+            cp += 16;
+        }
+        int upper = cp - 1;
+        return upper < Character.MIN_SUPPLEMENTARY_CODE_POINT
+            ? range(lower, upper)
+            : ch -> lower <= ch && ch <= upper;
+    }
+
     /////////////////////////////////////////////////////////////////////////////
 
     // unicode categories, aliases, properties, java methods ...
 
     static CharPredicate forProperty(String name, boolean caseIns) {
+        return table(name + ":" + caseIns, getProperty(name, caseIns));
+    }
+
+    private static CharPredicate getProperty(String name, boolean caseIns) {
         // Unicode character property aliases, defined in
         // http://www.unicode.org/Public/UNIDATA/PropertyValueAliases.txt
         // Other
@@ -510,6 +548,17 @@ class CharPredicates {
         }
     }
 
+    /**
+     * Returns the lookup table of a property, which is shared by all patterns that use it and
+     * filled as characters are tested. Properties of the BMP only test a range or an ASCII type,
+     * which is as fast as a table.
+     */
+    private static CharPredicate table(String key, CharPredicate p) {
+        if (p == null || p instanceof BmpCharPredicate)
+            return p;
+        return TABLES.computeIfAbsent(key, k -> CharTable.of(p));
+    }
+
     private static CharPredicate category(final int typeMask) {
         return ch -> (typeMask & (1 << Character.getType(ch))) != 0;
     }
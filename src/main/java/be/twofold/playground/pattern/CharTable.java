@@ -0,0 +1,78 @@
+package be.twofold.playground.pattern;
+
+import be.twofold.playground.pattern.Pattern.*;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * A predicate that remembers its answer for every code point it has been asked about, so testing
+ * a character is a table lookup instead of a call into {@link Character}.
+ *
+ * <p>The code points are split in blocks of 64, which are stored as a {@code long} of bits. A
+ * block is filled the first time one of its code points is tested, so building a table costs
+ * nothing up front, and a text only pays for the blocks it uses. The BMP has all of its blocks
+ * allocated, supplementary planes are allocated on first use.
+ *
+ * <p>Tables are shared between threads. A block is written before its bit in {@code filled} is
+ * set, and read after that bit is seen, so a thread never sees a half filled block. Two threads
+ * may fill the same block, but they store the same bits.
+ */
+final class CharTable implements CharPredicate {
+    private static final int BLOCK_SHIFT = 6;
+    private static final int PLANE_SHIFT = 16;
+    private static final int PLANE_BLOCKS = 1 << PLANE_SHIFT - BLOCK_SHIFT;
+
+    private final CharPredicate predicate;
+
+    // One bit for every block that has been filled
+    private final AtomicLongArray filled = new AtomicLongArray((Character.MAX_CODE_POINT + 1) >>> 2 * BLOCK_SHIFT);
+
+    // The blocks of the BMP, and of the supplementary planes that have been used
+    private final long[] bmp = new long[PLANE_BLOCKS];
+    private final AtomicReferenceArray<long[]> planes = new AtomicReferenceArray<>(Character.MAX_CODE_POINT >>> PLANE_SHIFT);
+
+    private CharTable(CharPredicate predicate) {
+        this.predicate = predicate;
+    }
+
+    static CharTable of(CharPredicate predicate) {
+        return new CharTable(predicate);
+    }
+
+    @Override
+    public boolean is(int ch) {
+        int block = ch >>> BLOCK_SHIFT;
+        // The shift of a long only uses the lowest 6 bits
+        if ((filled.getAcquire(block >>> BLOCK_SHIFT) >>> block & 1) == 0) {
+            fill(block);
+        }
+        if (ch >>> PLANE_SHIFT == 0) {
+            return (bmp[block] >>> ch & 1) != 0;
+        }
+        return (planes.get((ch >>> PLANE_SHIFT) - 1)[block & PLANE_BLOCKS - 1] >>> ch & 1) != 0;
+    }
+
+    private void fill(int block) {
+        long bits = 0;
+        for (int i = 0; i < 1 << BLOCK_SHIFT; i++) {
+            if (predicate.is(block << BLOCK_SHIFT | i)) {
+                bits |= 1L << i;
+            }
+        }
+        plane(block)[block & PLANE_BLOCKS - 1] = bits;
+        filled.getAndAccumulate(block >>> BLOCK_SHIFT, 1L << block, (a, b) -> a | b);
+    }
+
+    private long[] plane(int block) {
+        int plane = block >>> PLANE_SHIFT - BLOCK_SHIFT;
+        if (plane == 0) {
+            return bmp;
+        }
+        long[] blocks = planes.get(plane - 1);
+        if (blocks == null) {
+            planes.compareAndSet(plane - 1, null, new long[PLANE_BLOCKS]);
+            blocks = planes.get(plane - 1);
+        }
+        return blocks;
+    }
+}
@@ -0,0 +1,457 @@
+package be.twofold.playground.pattern;
+
+import be.twofold.playground.pattern.Pattern.*;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A DFA built from an {@link Nfa} while it runs, one transition at a time.
+ *
+ * <p>A state is the set of instructions that are alive at a position, so once a state has seen
+ * a character, the next one is a single lookup. Building all states up front can take
+ * exponential time and space, so only the states the input actually reaches are created, and
+ * the cache is dropped when it holds too many. If that keeps happening during one run, the DFA
+ * gives up and the caller runs the NFA instead.
+ *
+ * <p>The DFA only tells whether there is a match, not where the groups are. States never change
+ * apart from their transitions, which are always filled in with equal values, so the DFA is
+ * shared between threads without locking.
+ */
+final class Dfa {
+    static final int NO_MATCH = 0;
+    static final int MATCH = 1;
+    static final int UNKNOWN = -1;
+
+    // Does all of the input match?
+    static final int FULL = 0;
+    // Does a prefix of the input match?
+    static final int PREFIX = 1;
+    // Does the input contain a match?
+    static final int SEARCH = 2;
+    // Which of the patterns in a union does the input contain?
+    static final int ALL = 3;
+
+    private static final int MAX_STATES = 4096;
+    private static final int MAX_RESETS = 4;
+
+    private static final int[] NONE = new int[0];
+    private static final State MATCHED = new State(NONE, 0, NONE);
+    private static final State DEAD = new State(NONE, 0, NONE);
+
+    private final Nfa nfa;
+    private final int mode;
+    private volatile Cache cache = new Cache();
+
+    Dfa(Nfa nfa, int mode) {
+        this.nfa = nfa;
+        this.mode = mode;
+    }
+
+    /**
+     * Runs the DFA over {@code seq} from {@code i} to {@code to}, where {@code from} is the start
+     * of the region, as far as {@code ^} and {@code \b} are concerned.
+     *
+     * @return {@link #MATCH}, {@link #NO_MATCH}, or {@link #UNKNOWN} if it gave up
+     */
+    int test(CharSequence seq, int i, int from, int to) {
+        return run(seq, i, from, to, null);
+    }
+
+    /**
+     * Runs the DFA in {@link #ALL} mode over all of {@code seq}, and sets the id of every pattern
+     * that matches somewhere.
+     *
+     * @return {@link #MATCH}, {@link #NO_MATCH}, or {@link #UNKNOWN} if it gave up
+     */
+    int testAll(CharSequence seq, BitSet ids) {
+        return run(seq, 0, 0, seq.length(), ids);
+    }
+
+    /**
+     * Runs the DFA over the UTF-8 encoded bytes of {@code buffer} from {@code from} to {@code to},
+     * decoding one code point at a time in place.
+     *
+     * @return {@link #MATCH}, {@link #NO_MATCH}, or {@link #UNKNOWN} if it gave up
+     */
+    int test(ByteBuffer buffer, int from, int to) {
+        Cache cache = this.cache;
+        int resets = 0;
+        State state = start(cache, nfa.usesBegin ? Nfa.AT_BEGIN : 0);
+
+        // Whether the code points so far end in a letter or digit followed by non spacing marks,
+        // which is what Pattern.hasBaseCharacter looks for going back
+        boolean based = false;
+        for (int i = from; i < to; ) {
+            long decoded = Utf8.decode(buffer, i, to);
+            int cp = Utf8.codePoint(decoded);
+            int next = i + Utf8.length(decoded);
+
+            boolean mark = nfa.usesWords && Character.getType(cp) == Character.NON_SPACING_MARK;
+            boolean special = nfa.usesDollar && i >= to - 3 || mark;
+            State target = special ? null : state.get(cp);
+            if (target == null) {
+                int context;
+                int flags;
+                if (special) {
+                    boolean word = nfa.usesWords && Bound.isWord(cp);
+                    context = (nfa.usesDollar && Utf8.dollar(buffer, i, from, to) ? Nfa.AT_DOLLAR : 0)
+                        | (word || mark && based ? Nfa.WORD_AFTER : 0);
+                    // Going back from the next position, the low half of a surrogate pair is no mark
+                    flags = word || mark && based && !Character.isSupplementaryCodePoint(cp) ? Nfa.WORD_BEFORE : 0;
+                } else {
+                    boolean word = nfa.usesWords && Bound.isWord(cp);
+                    context = word ? Nfa.WORD_AFTER : 0;
+                    flags = word ? Nfa.WORD_BEFORE : 0;
+                }
+                target = step(state, cp, context, flags);
+                if (!special) {
+                    state.put(cp, target);
+                }
+                if (this.cache != cache) {
+                    cache = this.cache;
+                    if (++resets > MAX_RESETS) {
+                        return UNKNOWN;
+                    }
+                }
+            }
+
+            if (target == MATCHED) {
+                return MATCH;
+            }
+            if (target == DEAD) {
+                return NO_MATCH;
+            }
+            if (nfa.usesWords) {
+                based = !Character.isSupplementaryCodePoint(cp) && (Character.isLetterOrDigit(cp) || based && mark);
+            }
+            state = target;
+            i = next;
+        }
+        return atEnd(state).length != 0 ? MATCH : NO_MATCH;
+    }
+
+    private int run(CharSequence seq, int i, int from, int to, BitSet ids) {
+        Cache cache = this.cache;
+        int resets = 0;
+        State state = start(cache, startFlags(seq, i, from));
+        while (i < to) {
+            int cp = Nfa.codePointAt(seq, i, to);
+            int next = i + Character.charCount(cp);
+
+            // Close to a line terminator at the end, or after a combining mark, the next state
+            // depends on more than the character itself
+            boolean special = nfa.usesDollar && i >= to - 2
+                || nfa.usesWords && Character.getType(cp) == Character.NON_SPACING_MARK;
+            State target = special ? null : state.get(cp);
+            if (target == null) {
+                int context;
+                int flags;
+                if (special) {
+                    context = Nfa.context(seq, i, from, to) & (Nfa.AT_DOLLAR | Nfa.WORD_AFTER);
+                    flags = nfa.usesWords && Nfa.wordBefore(seq, next, from) ? Nfa.WORD_BEFORE : 0;
+                } else {
+                    boolean word = nfa.usesWords && Bound.isWord(cp);
+                    context = word ? Nfa.WORD_AFTER : 0;
+                    flags = word ? Nfa.WORD_BEFORE : 0;
+                }
+                target = step(state, cp, context, flags);
+                if (!special) {
+                    state.put(cp, target);
+                }
+                if (this.cache != cache) {
+                    cache = this.cache;
+                    if (++resets > MAX_RESETS) {
+                        return UNKNOWN;
+                    }
+                }
+            }
+
+            if (target == MATCHED) {
+                return MATCH;
+            }
+            if (target == DEAD) {
+                return NO_MATCH;
+            }
+            for (int id : target.matched) {
+                ids.set(id);
+            }
+            state = target;
+            i = next;
+        }
+
+        int[] atEnd = atEnd(state);
+        if (ids == null) {
+            return atEnd.length != 0 ? MATCH : NO_MATCH;
+        }
+        for (int id : atEnd) {
+            ids.set(id);
+        }
+        return ids.isEmpty() ? NO_MATCH : MATCH;
+    }
+
+    private int startFlags(CharSequence seq, int i, int from) {
+        int flags = 0;
+        if (nfa.usesBegin && i == from) {
+            flags |= Nfa.AT_BEGIN;
+        }
+        if (nfa.usesWords && Nfa.wordBefore(seq, i, from)) {
+            flags |= Nfa.WORD_BEFORE;
+        }
+        return flags;
+    }
+
+    private State start(Cache cache, int flags) {
+        State state = cache.starts[flags];
+        if (state == null) {
+            int[] kernel = mode >= SEARCH ? NONE : new int[]{nfa.start};
+            cache.starts[flags] = state = intern(kernel, flags, NONE);
+        }
+        return state;
+    }
+
+    /**
+     * Computes the state after {@code cp}. In {@link #ALL} mode the patterns that matched before
+     * {@code cp} are remembered in that state, one character late, so they can be cached along
+     * with the transition.
+     */
+    private State step(State state, int cp, int context, int flags) {
+        boolean search = mode >= SEARCH;
+        Closure closure = closure(state.kernel, search ? nfa.start : -1, context | state.flags);
+        if (mode != FULL && mode != ALL && closure.matched != 0) {
+            return MATCHED;
+        }
+        Closure middle = null;
+        if (search && nfa.midStart >= 0 && Character.isSupplementaryCodePoint(cp)) {
+            // A search also starts between the two halves of a surrogate pair
+            middle = closure(NONE, nfa.midStart, 0);
+            if (mode != ALL && middle.matched != 0) {
+                return MATCHED;
+            }
+        }
+
+        int[] kernel = new int[closure.size + (middle != null ? middle.size : 0)];
+        int size = closure.advance(cp, kernel, 0);
+        if (middle != null) {
+            size = middle.advance(Character.lowSurrogate(cp), kernel, size);
+        }
+        if (size == 0 && !search) {
+            return DEAD;
+        }
+
+        int[] matched = NONE;
+        if (mode == ALL) {
+            matched = closure.ids();
+            if (middle != null && middle.matched != 0) {
+                int[] more = middle.ids();
+                matched = Arrays.copyOf(matched, matched.length + more.length);
+                System.arraycopy(more, 0, matched, matched.length - more.length, more.length);
+                matched = distinct(matched, matched.length);
+            }
+        }
+        return intern(distinct(kernel, size), flags, matched);
+    }
+
+    /**
+     * Returns the patterns that match at the end of the input, with the state as the last one.
+     * Outside of {@link #ALL} mode that's either nothing or pattern 0.
+     */
+    private int[] atEnd(State state) {
+        int[] atEnd = state.atEnd;
+        if (atEnd == null) {
+            int context = state.flags | Nfa.AT_END | Nfa.AT_DOLLAR;
+            state.atEnd = atEnd = closure(state.kernel, mode >= SEARCH ? nfa.start : -1, context).ids();
+        }
+        return atEnd;
+    }
+
+    /**
+     * Follows the epsilon transitions from the kernel, and from {@code start} if it's not -1.
+     */
+    private Closure closure(int[] kernel, int start, int context) {
+        Closure closure = new Closure(nfa);
+        long[] seen = new long[(nfa.length + 63) >>> 6];
+        int[] stack = new int[kernel.length + 16];
+        int top = 0;
+        for (int pc : kernel) {
+            stack[top++] = pc;
+        }
+        if (start >= 0) {
+            stack[top++] = start;
+        }
+        while (top > 0) {
+            int pc = stack[--top];
+            if ((seen[pc >>> 6] & (1L << pc)) != 0) {
+                continue;
+            }
+            seen[pc >>> 6] |= 1L << pc;
+            if (stack.length - top < 2) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            switch (nfa.op[pc]) {
+                case Nfa.MATCH, Nfa.CHAR -> closure.add(pc);
+                case Nfa.SPLIT -> {
+                    stack[top++] = nfa.out1[pc];
+                    stack[top++] = nfa.out[pc];
+                }
+                case Nfa.SAVE -> stack[top++] = nfa.out[pc];
+                case Nfa.ASSERT -> {
+                    if (Nfa.holds(nfa.arg[pc], context)) {
+                        stack[top++] = nfa.out[pc];
+                    }
+                }
+                default -> throw new IllegalStateException();
+            }
+        }
+        return closure;
+    }
+
+    private State intern(int[] kernel, int flags, int[] matched) {
+        Cache cache = this.cache;
+        State state = new State(kernel, flags, matched);
+        State existing = cache.states.putIfAbsent(state, state);
+        if (existing != null) {
+            return existing;
+        }
+        if (cache.states.size() > MAX_STATES) {
+            // Start over, the states that are still in use keep working
+            this.cache = new Cache();
+        }
+        return state;
+    }
+
+    /**
+     * Sorts the first {@code size} values, and returns them without duplicates.
+     */
+    private static int[] distinct(int[] values, int size) {
+        Arrays.sort(values, 0, size);
+        int distinct = 0;
+        for (int k = 0; k < size; k++) {
+            if (distinct == 0 || values[distinct - 1] != values[k]) {
+                values[distinct++] = values[k];
+            }
+        }
+        return distinct == 0 ? NONE : Arrays.copyOf(values, distinct);
+    }
+
+    /**
+     * The instructions that read input or match, reached from a state.
+     */
+    private static final class Closure {
+        private final Nfa nfa;
+        int[] pcs = new int[16];
+        int size;
+        int matched;
+
+        Closure(Nfa nfa) {
+            this.nfa = nfa;
+        }
+
+        void add(int pc) {
+            if (size == pcs.length) {
+                pcs = Arrays.copyOf(pcs, size * 2);
+            }
+            pcs[size++] = pc;
+            if (nfa.op[pc] == Nfa.MATCH) {
+                matched++;
+            }
+        }
+
+        int advance(int cp, int[] kernel, int size) {
+            for (int k = 0; k < this.size; k++) {
+                int pc = pcs[k];
+                if (nfa.op[pc] == Nfa.CHAR && nfa.matches(pc, cp)) {
+                    kernel[size++] = nfa.out[pc];
+                }
+            }
+            return size;
+        }
+
+        /**
+         * Returns the ids of the patterns that matched.
+         */
+        int[] ids() {
+            if (matched == 0) {
+                return NONE;
+            }
+            int[] ids = new int[matched];
+            int count = 0;
+            for (int k = 0; k < size; k++) {
+                if (nfa.op[pcs[k]] == Nfa.MATCH) {
+                    ids[count++] = nfa.arg[pcs[k]];
+                }
+            }
+            return distinct(ids, count);
+        }
+    }
+
+    private static final class Cache {
+        final Map<State, State> states = new ConcurrentHashMap<>();
+        final State[] starts = new State[16];
+    }
+
+    private static final class State {
+        final int[] kernel;
+        final int flags;
+        final int[] matched;
+        private final int hash;
+
+        private State[][] pages;
+        private Map<Integer, State> supplementary;
+        volatile int[] atEnd;
+
+        State(int[] kernel, int flags, int[] matched) {
+            this.kernel = kernel;
+            this.flags = flags;
+            this.matched = matched;
+            this.hash = (Arrays.hashCode(kernel) * 31 + flags) * 31 + Arrays.hashCode(matched);
+        }
+
+        State get(int cp) {
+            if (cp < 0x10000) {
+                State[][] pages = this.pages;
+                if (pages == null) {
+                    return null;
+                }
+                State[] page = pages[cp >>> 8];
+                return page == null ? null : page[cp & 0xFF];
+            }
+            Map<Integer, State> supplementary = this.supplementary;
+            return supplementary == null ? null : supplementary.get(cp);
+        }
+
+        void put(int cp, State state) {
+            if (cp < 0x10000) {
+                State[][] pages = this.pages;
+                if (pages == null) {
+                    this.pages = pages = new State[256][];
+                }
+                State[] page = pages[cp >>> 8];
+                if (page == null) {
+                    pages[cp >>> 8] = page = new State[256];
+                }
+                page[cp & 0xFF] = state;
+            } else {
+                Map<Integer, State> supplementary = this.supplementary;
+                if (supplementary == null) {
+                    this.supplementary = supplementary = new ConcurrentHashMap<>();
+                }
+                supplementary.put(cp, state);
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof State other
+                && flags == other.flags
+                && Arrays.equals(kernel, other.kernel)
+                && Arrays.equals(matched, other.matched);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,540 @@
+/*
+ * Copyright (c) 1999, 2021, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package be.twofold.playground.pattern;
+
+import java.util.*;
+import java.util.regex.*;
+
+/**
+ * An engine that performs match operations on a {@linkplain CharSequence
+ * character sequence} by interpreting a {@link Pattern}.
+ *
+ * <p> A matcher is created from a pattern by invoking the pattern's {@link
+ * Pattern#matcher matcher} method.  Once created, a matcher can be used to
+ * perform three different kinds of match operations:
+ *
+ * <ul>
+ *
+ *   <li><p> The {@link #matches matches} method attempts to match the entire
+ *   input sequence against the pattern.  </p></li>
+ *
+ *   <li><p> The {@link #lookingAt lookingAt} method attempts to match the
+ *   input sequence, starting at the beginning, against the pattern.  </p></li>
+ *
+ *   <li><p> The {@link #find find} method scans the input sequence looking
+ *   for the next subsequence that matches the pattern.  </p></li>
+ *
+ * </ul>
+ *
+ * <p> The state of a matcher is reset by its {@link #reset() reset} method,
+ * or by {@link #reset(CharSequence) reset(CharSequence)} if a new input
+ * sequence is desired.  A matcher can be reused for any number of inputs,
+ * which avoids allocating the group and loop state for every match.
+ *
+ * <p> Instances of this class are not safe for use by multiple concurrent
+ * threads.
+ */
+public final class Matcher implements MatchResult {
+
+    /**
+     * Matcher state used by the last node. NOANCHOR is used when a
+     * match does not have to consume all of the input. ENDANCHOR is
+     * the mode used for matching all the input.
+     */
+    static final int ENDANCHOR = 1;
+    static final int NOANCHOR = 0;
+
+    /**
+     * The Pattern object that created this Matcher.
+     */
+    private Pattern parentPattern;
+
+    /**
+     * The storage used by groups. They may contain invalid values if
+     * a group was skipped during the matching.
+     */
+    int[] groups;
+
+    /**
+     * Storage used by nodes to tell what repetition they are on in
+     * a pattern, and where groups begin. The nodes themselves are stateless,
+     * so they rely on this field to hold state during a match.
+     */
+    int[] locals;
+
+    /**
+     * The range within the sequence that is to be matched.
+     */
+    int from, to;
+
+    /**
+     * The original string being matched.
+     */
+    CharSequence text;
+
+    /**
+     * The range of string that last matched the pattern. If the last
+     * match failed then first is -1; last initially holds 0 then it
+     * holds the index of the end of the last match (which is where the
+     * next search starts).
+     */
+    int first = -1, last = 0;
+
+    /**
+     * The end index of what matched in the last match operation.
+     */
+    int oldLast = -1;
+
+    /**
+     * Storage used when the pattern runs on its {@link Nfa}, allocated on
+     * the first match that needs it.
+     */
+    private Nfa.Threads threads;
+
+    /**
+     * Boolean indicating whether or not more input could change
+     * the results of the last match.
+     * <p>
+     * If hitEnd is true, and a match was found, then more input
+     * might cause a different match to be found.
+     * If hitEnd is true and a match was not found, then more
+     * input could cause a match to be found.
+     * If hitEnd is false and a match was found, then more input
+     * will not change the match.
+     * If hitEnd is false and a match was not found, then more
+     * input will not cause a match to be found.
+     */
+    boolean hitEnd;
+
+    /**
+     * Boolean indicating whether or not more input could change
+     * a positive match into a negative one.
+     * <p>
+     * If requireEnd is true, and a match was found, then more
+     * input could cause the match to be lost.
+     * If requireEnd is false and a match was found, then more
+     * input might change the match but the match won't be lost.
+     * If a match was not found, then requireEnd has no meaning.
+     */
+    boolean requireEnd;
+
+    /**
+     * The mode used by the last node, see {@link #ENDANCHOR}.
+     */
+    int acceptMode = NOANCHOR;
+
+    /**
+     * All matchers have the state used by Pattern during a match.
+     */
+    Matcher(Pattern parent, CharSequence text) {
+        this.parentPattern = parent;
+        this.text = text;
+
+        // Allocate state storage
+        int parentGroupCount = Math.max(parent.capturingGroupCount, 10);
+        groups = new int[parentGroupCount * 2];
+        locals = new int[parent.localCount];
+
+        // Put fields into initial states
+        reset();
+    }
+
+    /**
+     * Returns the pattern that is interpreted by this matcher.
+     *
+     * @return The pattern for which this matcher was created
+     */
+    public Pattern pattern() {
+        return parentPattern;
+    }
+
+    /**
+     * Resets this matcher.
+     *
+     * <p> Resetting a matcher discards all of its explicit state information.
+     * The matcher's region is set to the whole input sequence.
+     *
+     * @return This matcher
+     */
+    public Matcher reset() {
+        first = -1;
+        last = 0;
+        oldLast = -1;
+        Arrays.fill(groups, -1);
+        Arrays.fill(locals, -1);
+        from = 0;
+        to = getTextLength();
+        return this;
+    }
+
+    /**
+     * Resets this matcher with a new input sequence.
+     *
+     * @param input The new input character sequence
+     * @return This matcher
+     */
+    public Matcher reset(CharSequence input) {
+        text = Objects.requireNonNull(input, "input");
+        return reset();
+    }
+
+    /**
+     * Points this matcher at another pattern and input sequence, so that one
+     * matcher can serve several patterns. The state storage is only grown,
+     * never shrunk.
+     *
+     * @param pattern The pattern to interpret from now on
+     * @param input   The new input character sequence
+     * @return This matcher
+     */
+    Matcher reset(Pattern pattern, CharSequence input) {
+        if (pattern != parentPattern) {
+            parentPattern = pattern;
+            threads = null;
+            int groupCount = Math.max(pattern.capturingGroupCount, 10);
+            if (groups.length < groupCount * 2) {
+                groups = new int[groupCount * 2];
+            }
+            if (locals.length < pattern.localCount) {
+                locals = new int[pattern.localCount];
+            }
+        }
+        return reset(input);
+    }
+
+    /**
+     * Returns the start index of the previous match.
+     *
+     * @return The index of the first character matched
+     * @throws IllegalStateException If no match has yet been attempted,
+     *                               or if the previous match operation failed
+     */
+    @Override
+    public int start() {
+        checkMatch();
+        return first;
+    }
+
+    /**
+     * Returns the start index of the subsequence captured by the given group
+     * during the previous match operation.
+     *
+     * @param group The index of a capturing group in this matcher's pattern
+     * @return The index of the first character captured by the group,
+     * or {@code -1} if the match was successful but the group
+     * itself did not match anything
+     * @throws IllegalStateException     If no match has yet been attempted,
+     *                                   or if the previous match operation failed
+     * @throws IndexOutOfBoundsException If there is no capturing group in the pattern
+     *                                   with the given index
+     */
+    @Override
+    public int start(int group) {
+        checkMatch();
+        checkGroup(group);
+        return groups[group * 2];
+    }
+
+    /**
+     * Returns the offset after the last character matched.
+     *
+     * @return The offset after the last character matched
+     * @throws IllegalStateException If no match has yet been attempted,
+     *                               or if the previous match operation failed
+     */
+    @Override
+    public int end() {
+        checkMatch();
+        return last;
+    }
+
+    /**
+     * Returns the offset after the last character of the subsequence
+     * captured by the given group during the previous match operation.
+     *
+     * @param group The index of a capturing group in this matcher's pattern
+     * @return The offset after the last character captured by the group,
+     * or {@code -1} if the match was successful
+     * but the group itself did not match anything
+     * @throws IllegalStateException     If no match has yet been attempted,
+     *                                   or if the previous match operation failed
+     * @throws IndexOutOfBoundsException If there is no capturing group in the pattern
+     *                                   with the given index
+     */
+    @Override
+    public int end(int group) {
+        checkMatch();
+        checkGroup(group);
+        return groups[group * 2 + 1];
+    }
+
+    /**
+     * Returns the input subsequence matched by the previous match.
+     *
+     * @return The (possibly empty) subsequence matched by the previous match,
+     * in string form
+     * @throws IllegalStateException If no match has yet been attempted,
+     *                               or if the previous match operation failed
+     */
+    @Override
+    public String group() {
+        return group(0);
+    }
+
+    /**
+     * Returns the input subsequence captured by the given group during the
+     * previous match operation.
+     *
+     * @param group The index of a capturing group in this matcher's pattern
+     * @return The (possibly empty) subsequence captured by the group
+     * during the previous match, or {@code null} if the group
+     * failed to match part of the input
+     * @throws IllegalStateException     If no match has yet been attempted,
+     *                                   or if the previous match operation failed
+     * @throws IndexOutOfBoundsException If there is no capturing group in the pattern
+     *                                   with the given index
+     */
+    @Override
+    public String group(int group) {
+        checkMatch();
+        checkGroup(group);
+        if ((groups[group * 2] == -1) || (groups[group * 2 + 1] == -1))
+            return null;
+        return getSubSequence(groups[group * 2], groups[group * 2 + 1]).toString();
+    }
+
+    /**
+     * Returns the number of capturing groups in this matcher's pattern.
+     *
+     * @return The number of capturing groups in this matcher's pattern
+     */
+    @Override
+    public int groupCount() {
+        return parentPattern.capturingGroupCount - 1;
+    }
+
+    /**
+     * Attempts to match the entire region against the pattern.
+     *
+     * @return {@code true} if, and only if, the entire region sequence
+     * matches this matcher's pattern
+     */
+    public boolean matches() {
+        return match(from, ENDANCHOR);
+    }
+
+    /**
+     * Attempts to find the next subsequence of the input sequence that matches
+     * the pattern.
+     *
+     * <p> This method starts at the beginning of this matcher's region, or, if
+     * a previous invocation of the method was successful and the matcher has
+     * not since been reset, at the first character not matched by the previous
+     * match.
+     *
+     * @return {@code true} if, and only if, a subsequence of the input
+     * sequence matches this matcher's pattern
+     */
+    public boolean find() {
+        int nextSearchIndex = last;
+        if (nextSearchIndex == first)
+            nextSearchIndex++;
+
+        // If next search starts before region, start it at region
+        if (nextSearchIndex < from)
+            nextSearchIndex = from;
+
+        // If next search starts beyond region then it fails
+        if (nextSearchIndex > to) {
+            Arrays.fill(groups, -1);
+            return false;
+        }
+        return search(nextSearchIndex);
+    }
+
+    /**
+     * Resets this matcher and then attempts to find the next subsequence of
+     * the input sequence that matches the pattern, starting at the specified
+     * index.
+     *
+     * @param start the index to start searching for a match
+     * @return {@code true} if, and only if, a subsequence of the input
+     * sequence starting at the given index matches this matcher's pattern
+     * @throws IndexOutOfBoundsException If start is less than zero or if start is greater than the
+     *                                   length of the input sequence.
+     */
+    public boolean find(int start) {
+        int limit = getTextLength();
+        if ((start < 0) || (start > limit))
+            throw new IndexOutOfBoundsException("Illegal start index");
+        reset();
+        return search(start);
+    }
+
+    /**
+     * Attempts to match the input sequence, starting at the beginning of the
+     * region, against the pattern.
+     *
+     * <p> Like the {@link #matches matches} method, this method always starts
+     * at the beginning of the region; unlike that method, it does not
+     * require that the entire region be matched.
+     *
+     * @return {@code true} if, and only if, a prefix of the input
+     * sequence matches this matcher's pattern
+     */
+    public boolean lookingAt() {
+        return match(from, NOANCHOR);
+    }
+
+    /**
+     * Returns true if the end of input was hit by the search engine in
+     * the last match operation performed by this matcher.
+     *
+     * @return true iff the end of input was hit in the last match; false
+     * otherwise
+     */
+    public boolean hitEnd() {
+        return hitEnd;
+    }
+
+    /**
+     * Returns true if more input could change a positive match into a
+     * negative one.
+     *
+     * @return true iff more input could change a positive match into a
+     * negative one.
+     */
+    public boolean requireEnd() {
+        return requireEnd;
+    }
+
+    /**
+     * Initiates a search to find a Pattern within the given bounds.
+     * The groups are filled with default values and the match of the root
+     * of the state machine is called. The state machine will hold the state
+     * of the match as it proceeds in this matcher.
+     */
+    boolean search(int from) {
+        this.hitEnd = false;
+        this.requireEnd = false;
+        from = Math.max(from, 0);
+        this.first = from;
+        this.oldLast = oldLast < 0 ? from : oldLast;
+        Arrays.fill(groups, -1);
+        Arrays.fill(locals, -1);
+        acceptMode = NOANCHOR;
+        Nfa nfa = parentPattern.nfa;
+        Prefilter prefilter = parentPattern.prefilter;
+        boolean result;
+        if (prefilter != null) {
+            result = prefilter.find(this, from);
+        } else if (nfa != null) {
+            result = nfa.find(this, from);
+        } else {
+            result = parentPattern.root.match(this, from, text);
+        }
+        if (!result)
+            this.first = -1;
+        this.oldLast = this.last;
+        return result;
+    }
+
+    /**
+     * Initiates a search for an anchored match to a Pattern within the given
+     * bounds. The groups are filled with default values and the match of the
+     * root of the state machine is called. The state machine will hold the
+     * state of the match as it proceeds in this matcher.
+     */
+    boolean match(int from, int anchor) {
+        this.hitEnd = false;
+        this.requireEnd = false;
+        from = Math.max(from, 0);
+        this.first = from;
+        this.oldLast = oldLast < 0 ? from : oldLast;
+        Arrays.fill(groups, -1);
+        Arrays.fill(locals, -1);
+        acceptMode = anchor;
+        Nfa nfa = parentPattern.nfa;
+        boolean result = nfa != null
+            ? nfa.match(this, from, anchor == ENDANCHOR)
+            : parentPattern.matchRoot.match(this, from, text);
+        if (!result)
+            this.first = -1;
+        this.oldLast = this.last;
+        return result;
+    }
+
+    Nfa.Threads threads() {
+        if (threads == null) {
+            threads = new Nfa.Threads(parentPattern.nfa);
+        }
+        return threads;
+    }
+
+    /**
+     * Returns the end index of the text.
+     *
+     * @return the index after the last character in the text
+     */
+    int getTextLength() {
+        return text.length();
+    }
+
+    /**
+     * Generates a String from this matcher's input in the specified range.
+     *
+     * @param beginIndex the beginning index, inclusive
+     * @param endIndex   the ending index, exclusive
+     * @return A String generated from this matcher's input
+     */
+    CharSequence getSubSequence(int beginIndex, int endIndex) {
+        return text.subSequence(beginIndex, endIndex);
+    }
+
+    private void checkMatch() {
+        if (first < 0)
+            throw new IllegalStateException("No match found");
+    }
+
+    private void checkGroup(int group) {
+        if (group < 0 || group > groupCount())
+            throw new IndexOutOfBoundsException("No group " + group);
+    }
+
+    /**
+     * Returns the string representation of this matcher.
+     *
+     * @return The string representation of this matcher
+     */
+    @Override
+    public String toString() {
+        return "be.twofold.playground.pattern.Matcher" +
+            "[pattern=" + pattern() +
+            " region=" + from + "," + to +
+            " lastmatch=" + ((first >= 0) ? group() : "") +
+            "]";
+    }
+}
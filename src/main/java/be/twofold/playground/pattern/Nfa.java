@@ -0,0 +1,839 @@
+package be.twofold.playground.pattern;
+
+import be.twofold.playground.pattern.Pattern.*;
+
+import java.nio.*;
+import java.util.*;
+
+/**
+ * A Thompson NFA compiled from the node tree of a {@link Pattern}, which runs instead of the
+ * backtracking nodes whenever the pattern allows it.
+ *
+ * <p>Backtracking takes exponential time on patterns like {@code (a|aa)*b} when the input
+ * doesn't match. Here the input is read once, and every alternative that is still alive is
+ * kept in a list, in the order backtracking would have tried them (a Pike VM). The first
+ * alternative to reach the end of the pattern wins, which gives the same match and the same
+ * groups as backtracking, in time linear in the length of the input. Before that runs, a lazily
+ * built {@link Dfa} answers whether there is a match at all, so input that doesn't match never
+ * reaches the slower simulation.
+ *
+ * <p>Possessive quantifiers and {@code \G} can't be expressed as an automaton, and neither can a
+ * repeated group like {@code (\R)+}, that never backtracks into an iteration. Large counted
+ * repetitions would blow up the program. Those patterns keep backtracking. Plain literals do
+ * too, they can't backtrack in the first place. {@link Matcher#hitEnd()} and
+ * {@link Matcher#requireEnd()} are only approximations on the automaton.
+ */
+final class Nfa {
+    static final int MATCH = 0;
+    static final int CHAR = 1;
+    static final int SPLIT = 2;
+    static final int SAVE = 3;
+    static final int ASSERT = 4;
+
+    // Assertions
+    static final int BEGIN = 0;
+    static final int END = 1;
+    static final int DOLLAR = 2;
+    static final int BOUNDARY = 3;
+    static final int NOT_BOUNDARY = 4;
+
+    // What the assertions need to know about a position
+    static final int AT_BEGIN = 1;
+    static final int AT_END = 2;
+    static final int AT_DOLLAR = 4;
+    static final int WORD_BEFORE = 8;
+    static final int WORD_AFTER = 16;
+
+    private static final int MAX_INSTRUCTIONS = 10_000;
+
+    final int[] op;
+    final int[] out;
+    final int[] out1;
+    final int[] arg;
+    final CharPredicate[] predicate;
+    final int start;
+    final int length;
+    final int slots;
+
+    /**
+     * Whether a search only tries code point boundaries, see {@link StartS}.
+     */
+    final boolean startS;
+
+    /**
+     * Where a search starts between the two halves of a surrogate pair, or -1 if it doesn't.
+     */
+    final int midStart;
+
+    /**
+     * Whether a search only tries the first position, because the pattern starts with {@code ^}.
+     */
+    final boolean anchoredSearch;
+
+    /**
+     * The instructions a match can start with, or {@code null} if that depends on more than the
+     * first character. Searches skip ahead to the first character one of them accepts.
+     */
+    private final int[] firstChars;
+    private final long[] firstAscii = new long[2];
+
+    private final int assertions;
+    final boolean usesBegin;
+    final boolean usesDollar;
+    final boolean usesWords;
+    final boolean usesEnd;
+
+    private final Dfa search;
+    private final Dfa prefix;
+    private final Dfa full;
+
+    private Nfa(int[] op, int[] out, int[] out1, int[] arg, CharPredicate[] predicate, int start, int midStart,
+                int slots, boolean startS, boolean anchoredSearch, int assertions) {
+        this.length = op.length;
+        this.op = op;
+        this.out = out;
+        this.out1 = out1;
+        this.arg = arg;
+        this.predicate = predicate;
+        this.start = start;
+        this.midStart = midStart;
+        this.slots = slots;
+        this.startS = startS;
+        this.anchoredSearch = anchoredSearch;
+        this.assertions = assertions;
+        this.usesBegin = uses(BEGIN);
+        this.usesDollar = uses(DOLLAR);
+        this.usesWords = uses(BOUNDARY) || uses(NOT_BOUNDARY);
+        this.usesEnd = usesDollar || usesWords || uses(END);
+
+        this.firstChars = firstChars();
+        if (firstChars != null) {
+            for (int c = 0; c < 128; c++) {
+                if (canStart(c)) {
+                    firstAscii[c >>> 6] |= 1L << c;
+                }
+            }
+        }
+
+        this.search = new Dfa(this, anchoredSearch ? Dfa.PREFIX : Dfa.SEARCH);
+        this.prefix = new Dfa(this, Dfa.PREFIX);
+        this.full = new Dfa(this, Dfa.FULL);
+    }
+
+    /**
+     * Compiles the node tree of the pattern, or returns {@code null} if it can only be matched
+     * by backtracking.
+     */
+    static Nfa compile(Pattern pattern) {
+        Compiler compiler = new Compiler();
+        try {
+            int start = compiler.compile(pattern.matchRoot, new Scope());
+            int length = compiler.length;
+            return new Nfa(
+                Arrays.copyOf(compiler.op, length),
+                Arrays.copyOf(compiler.out, length),
+                Arrays.copyOf(compiler.out1, length),
+                Arrays.copyOf(compiler.arg, length),
+                Arrays.copyOf(compiler.predicate, length),
+                start,
+                pattern.hasSupplementary ? -1 : start,
+                pattern.capturingGroupCount * 2,
+                pattern.hasSupplementary,
+                pattern.matchRoot instanceof Begin,
+                compiler.assertions
+            );
+        } catch (UnsupportedOperationException | StackOverflowError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Combines the programs of several patterns into one, where the match instruction of every
+     * program reports the id of its pattern. Only meant for a {@link Dfa} in
+     * {@link Dfa#ALL} mode.
+     */
+    static Nfa union(List<Nfa> nfas, int[] ids) {
+        int length = 2 * nfas.size();
+        for (Nfa nfa : nfas) {
+            length += nfa.length;
+        }
+        int[] op = new int[length];
+        int[] out = new int[length];
+        int[] out1 = new int[length];
+        int[] arg = new int[length];
+        CharPredicate[] predicate = new CharPredicate[length];
+
+        int n = 0;
+        int start = -1;
+        int midStart = -1;
+        int assertions = 0;
+        for (int k = nfas.size() - 1; k >= 0; k--) {
+            Nfa nfa = nfas.get(k);
+            int offset = n;
+            for (int pc = 0; pc < nfa.length; pc++, n++) {
+                op[n] = nfa.op[pc];
+                out[n] = nfa.out[pc] < 0 ? -1 : nfa.out[pc] + offset;
+                out1[n] = nfa.out1[pc] < 0 ? -1 : nfa.out1[pc] + offset;
+                arg[n] = nfa.op[pc] == MATCH ? ids[k] : nfa.arg[pc];
+                predicate[n] = nfa.predicate[pc];
+            }
+
+            // Every pattern starts on its own branch, the order doesn't matter
+            int entry = nfa.start + offset;
+            if (start >= 0) {
+                op[n] = SPLIT;
+                out[n] = entry;
+                out1[n] = start;
+                entry = n++;
+            }
+            start = entry;
+            if (!nfa.startS) {
+                entry = nfa.start + offset;
+                if (midStart >= 0) {
+                    op[n] = SPLIT;
+                    out[n] = entry;
+                    out1[n] = midStart;
+                    entry = n++;
+                }
+                midStart = entry;
+            }
+            assertions |= nfa.assertions;
+        }
+        return new Nfa(
+            Arrays.copyOf(op, n),
+            Arrays.copyOf(out, n),
+            Arrays.copyOf(out1, n),
+            Arrays.copyOf(arg, n),
+            Arrays.copyOf(predicate, n),
+            start,
+            midStart,
+            2,
+            false,
+            false,
+            assertions
+        );
+    }
+
+    /**
+     * Looks for the next match at or after {@code from}, and fills in the groups of the matcher.
+     */
+    boolean find(Matcher matcher, int from) {
+        if (search.test(matcher.text, from, matcher.from, matcher.to) == Dfa.NO_MATCH) {
+            matcher.hitEnd = true;
+            return false;
+        }
+        return run(matcher, from, anchoredSearch, false);
+    }
+
+    /**
+     * Matches at {@code from}, either the whole input or a prefix of it, and fills in the groups
+     * of the matcher.
+     */
+    boolean match(Matcher matcher, int from, boolean entire) {
+        Dfa dfa = entire ? full : prefix;
+        if (dfa.test(matcher.text, from, matcher.from, matcher.to) == Dfa.NO_MATCH) {
+            return false;
+        }
+        return run(matcher, from, true, entire);
+    }
+
+    /**
+     * Tests the input without looking at groups, searching from {@code start} or matching all of
+     * it, and returns one of the {@link Dfa} results.
+     */
+    int test(CharSequence input, int start, boolean entire) {
+        return entire
+            ? full.test(input, 0, 0, input.length())
+            : search.test(input, start, 0, input.length());
+    }
+
+    /**
+     * Like {@link #test(CharSequence, int, boolean)}, for the UTF-8 encoded bytes between the
+     * position and the limit of the buffer.
+     */
+    int test(ByteBuffer buffer, boolean entire) {
+        return (entire ? full : search).test(buffer, buffer.position(), buffer.limit());
+    }
+
+    private boolean run(Matcher matcher, int from, boolean anchored, boolean entire) {
+        Threads threads = matcher.threads();
+        CharSequence seq = matcher.text;
+        int begin = matcher.from;
+        int to = matcher.to;
+
+        ThreadList[] lists = threads.lists;
+        for (ThreadList list : lists) {
+            list.clear();
+        }
+        int[] caps = threads.caps;
+        int[] best = threads.best;
+        boolean matched = false;
+        int nextStart = from;
+        for (int i = from; ; i++) {
+            ThreadList list = lists[i % 3];
+            if (!matched && i == nextStart) {
+                if (!anchored && firstChars != null && idle(lists)) {
+                    // Nothing is running, so skip to where the next match could start
+                    if ((i = skip(seq, i, to)) == to) {
+                        matcher.hitEnd = true;
+                        break;
+                    }
+                    for (ThreadList other : lists) {
+                        other.clear();
+                    }
+                    list = lists[i % 3];
+                }
+                // Lowest priority, so after everything that's already running
+                Arrays.fill(caps, -1);
+                caps[0] = i;
+                addThread(threads, list, start, i, caps, seq, begin, to);
+                if (!anchored && i < to) {
+                    nextStart = startS ? nextCodePoint(seq, i) : i + 1;
+                }
+            }
+
+            if (list.count > 0) {
+                if (i == to) {
+                    matcher.hitEnd = true;
+                }
+                int cp = i < to ? codePointAt(seq, i, to) : -1;
+                int len = Character.charCount(cp);
+                for (int k = 0; k < list.count; k++) {
+                    int pc = list.pcs[k];
+                    if (op[pc] == MATCH) {
+                        if (entire && i != to) {
+                            continue;
+                        }
+                        System.arraycopy(list.caps, k * slots, best, 0, slots);
+                        best[1] = i;
+                        matched = true;
+                        // Everything after this has a lower priority
+                        break;
+                    }
+                    if (cp >= 0 && matches(pc, cp)) {
+                        System.arraycopy(list.caps, k * slots, caps, 0, slots);
+                        addThread(threads, lists[(i + len) % 3], out[pc], i + len, caps, seq, begin, to);
+                    }
+                }
+            }
+            list.clear();
+
+            if (i >= to) {
+                break;
+            }
+            if ((matched || anchored) && lists[(i + 1) % 3].count == 0 && lists[(i + 2) % 3].count == 0) {
+                break;
+            }
+        }
+
+        if (!matched) {
+            return false;
+        }
+        System.arraycopy(best, 0, matcher.groups, 0, slots);
+        matcher.first = best[0];
+        matcher.last = best[1];
+        matcher.requireEnd = usesEnd && best[1] == to;
+        return true;
+    }
+
+    private int[] firstChars() {
+        int[] chars = new int[length];
+        int count = 0;
+        boolean[] seen = new boolean[length];
+        int[] stack = new int[length * 2 + 1];
+        int top = 0;
+        stack[top++] = start;
+        while (top > 0) {
+            int pc = stack[--top];
+            if (seen[pc]) {
+                continue;
+            }
+            seen[pc] = true;
+            switch (op[pc]) {
+                case CHAR -> chars[count++] = pc;
+                case SPLIT -> {
+                    stack[top++] = out1[pc];
+                    stack[top++] = out[pc];
+                }
+                case SAVE -> stack[top++] = out[pc];
+                default -> {
+                    // An assertion, or the empty string matches
+                    return null;
+                }
+            }
+        }
+        return Arrays.copyOf(chars, count);
+    }
+
+    /**
+     * Whether no thread is waiting for input, the lists might still hold instructions that were
+     * visited.
+     */
+    private static boolean idle(ThreadList[] lists) {
+        for (ThreadList list : lists) {
+            if (list.count != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int skip(CharSequence seq, int i, int to) {
+        while (i < to) {
+            int cp = codePointAt(seq, i, to);
+            if (cp < 128 ? (firstAscii[cp >>> 6] & (1L << cp)) != 0 : canStart(cp)) {
+                return i;
+            }
+            i += startS ? Character.charCount(cp) : 1;
+        }
+        return i;
+    }
+
+    private boolean canStart(int cp) {
+        for (int pc : firstChars) {
+            if (matches(pc, cp)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the thread at {@code pc0} to the list, following the epsilon transitions in priority
+     * order. The capture slots are updated along the way, and restored before returning.
+     */
+    private void addThread(Threads threads, ThreadList list, int pc0, int i, int[] caps, CharSequence seq, int from, int to) {
+        int[] stack = threads.stack;
+        int top = 0;
+        int context = -1;
+        stack[top++] = pc0;
+        while (top > 0) {
+            int pc = stack[--top];
+            if (pc < 0) {
+                // Restore a capture slot
+                caps[~pc] = stack[--top];
+                continue;
+            }
+            if (list.contains(pc)) {
+                continue;
+            }
+            list.add(pc);
+            switch (op[pc]) {
+                case MATCH, CHAR -> list.addThread(pc, caps, slots);
+                case SPLIT -> {
+                    stack[top++] = out1[pc];
+                    stack[top++] = out[pc];
+                }
+                case SAVE -> {
+                    stack[top++] = caps[arg[pc]];
+                    stack[top++] = ~arg[pc];
+                    caps[arg[pc]] = i;
+                    stack[top++] = out[pc];
+                }
+                case ASSERT -> {
+                    if (context < 0) {
+                        context = context(seq, i, from, to);
+                    }
+                    if (holds(arg[pc], context)) {
+                        stack[top++] = out[pc];
+                    }
+                }
+                default -> throw new IllegalStateException();
+            }
+        }
+    }
+
+    private boolean uses(int assertion) {
+        return (assertions & (1 << assertion)) != 0;
+    }
+
+    boolean matches(int pc, int cp) {
+        int literal = arg[pc];
+        return literal >= 0 ? cp == literal : predicate[pc].is(cp);
+    }
+
+    static boolean holds(int assertion, int context) {
+        return switch (assertion) {
+            case BEGIN -> (context & AT_BEGIN) != 0;
+            case END -> (context & AT_END) != 0;
+            case DOLLAR -> (context & AT_DOLLAR) != 0;
+            case BOUNDARY -> ((context & WORD_BEFORE) != 0) != ((context & WORD_AFTER) != 0);
+            case NOT_BOUNDARY -> ((context & WORD_BEFORE) != 0) == ((context & WORD_AFTER) != 0);
+            default -> throw new IllegalStateException();
+        };
+    }
+
+    static int context(CharSequence seq, int i, int from, int to) {
+        int context = 0;
+        if (i == from) {
+            context |= AT_BEGIN;
+        }
+        if (i == to) {
+            context |= AT_END;
+        }
+        if (dollar(seq, i, to)) {
+            context |= AT_DOLLAR;
+        }
+        if (wordBefore(seq, i, from)) {
+            context |= WORD_BEFORE;
+        }
+        if (wordAt(seq, i, from, to)) {
+            context |= WORD_AFTER;
+        }
+        return context;
+    }
+
+    /**
+     * The condition of {@link Dollar}: at the end, or before a line terminator at the end.
+     */
+    static boolean dollar(CharSequence seq, int i, int to) {
+        if (i < to - 2) {
+            return false;
+        }
+        if (i == to - 2 && (seq.charAt(i) != '\r' || seq.charAt(i + 1) != '\n')) {
+            return false;
+        }
+        if (i < to) {
+            char ch = seq.charAt(i);
+            if (ch == '\n') {
+                // No match between \r\n
+                return i == 0 || seq.charAt(i - 1) != '\r';
+            }
+            return ch == '\r' || ch == '\u0085' || (ch | 1) == '\u2029';
+        }
+        return true;
+    }
+
+    /**
+     * The left side of {@link Bound#check}.
+     */
+    static boolean wordBefore(CharSequence seq, int i, int from) {
+        if (i <= from) {
+            return false;
+        }
+        int ch = Character.codePointBefore(seq, i);
+        return Bound.isWord(ch) || (Character.getType(ch) == Character.NON_SPACING_MARK
+            && Pattern.hasBaseCharacter(from, i - 1, seq));
+    }
+
+    /**
+     * The right side of {@link Bound#check}.
+     */
+    static boolean wordAt(CharSequence seq, int i, int from, int to) {
+        if (i >= to) {
+            return false;
+        }
+        int ch = Character.codePointAt(seq, i);
+        return Bound.isWord(ch) || (Character.getType(ch) == Character.NON_SPACING_MARK
+            && Pattern.hasBaseCharacter(from, i, seq));
+    }
+
+    /**
+     * Like {@link Character#codePointAt(CharSequence, int)}, without reading past {@code to}.
+     */
+    static int codePointAt(CharSequence seq, int i, int to) {
+        char high = seq.charAt(i);
+        if (Character.isHighSurrogate(high) && i + 1 < to) {
+            char low = seq.charAt(i + 1);
+            if (Character.isLowSurrogate(low)) {
+                return Character.toCodePoint(high, low);
+            }
+        }
+        return high;
+    }
+
+    private static int nextCodePoint(CharSequence seq, int i) {
+        if (Character.isHighSurrogate(seq.charAt(i++)) && i < seq.length() && Character.isLowSurrogate(seq.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * The state of the simulation, kept in the matcher so it can be reused between matches.
+     */
+    static final class Threads {
+        final ThreadList[] lists = new ThreadList[3];
+        final int[] caps;
+        final int[] best;
+        final int[] stack;
+
+        Threads(Nfa nfa) {
+            for (int i = 0; i < lists.length; i++) {
+                lists[i] = new ThreadList(nfa.length, nfa.slots);
+            }
+            caps = new int[nfa.slots];
+            best = new int[nfa.slots];
+            // Every instruction pushes at most three entries
+            stack = new int[nfa.length * 3 + 1];
+        }
+    }
+
+    /**
+     * The threads at one position. Every instruction that was visited is kept in a sparse set, so
+     * a lower priority thread can't visit it again. The threads that still have to read input or
+     * have matched are kept in priority order, with their capture slots.
+     */
+    static final class ThreadList {
+        private final int[] sparse;
+        private final int[] dense;
+        private int size;
+
+        final int[] pcs;
+        final int[] caps;
+        int count;
+
+        ThreadList(int length, int slots) {
+            sparse = new int[length];
+            dense = new int[length];
+            pcs = new int[length];
+            caps = new int[length * slots];
+        }
+
+        boolean contains(int pc) {
+            int index = sparse[pc];
+            return index < size && dense[index] == pc;
+        }
+
+        void add(int pc) {
+            sparse[pc] = size;
+            dense[size++] = pc;
+        }
+
+        void addThread(int pc, int[] slots, int length) {
+            System.arraycopy(slots, 0, caps, count * length, length);
+            pcs[count++] = pc;
+        }
+
+        void clear() {
+            size = 0;
+            count = 0;
+        }
+    }
+
+    /**
+     * Turns the node tree into instructions. Nodes are compiled back to front, so every node
+     * knows where to continue. Anything the automaton can't express throws
+     * {@link UnsupportedOperationException}.
+     */
+    private static final class Compiler {
+        int[] op = new int[16];
+        int[] out = new int[16];
+        int[] out1 = new int[16];
+        int[] arg = new int[16];
+        CharPredicate[] predicate = new CharPredicate[16];
+        int length;
+        int assertions;
+
+        int compile(Node node, Scope scope) {
+            Integer pc = scope.memo.get(node);
+            if (pc != null) {
+                return pc;
+            }
+            int result = compileNode(node, scope);
+            scope.memo.put(node, result);
+            return result;
+        }
+
+        private int compileNode(Node node, Scope scope) {
+            if (node instanceof LastNode) {
+                return emit(MATCH, -1, -1, 0, null);
+            }
+            if (node instanceof CharProperty || node instanceof SliceNode) {
+                return atom(node, compile(node.next, scope.consumed));
+            }
+            if (node instanceof CharPropertyGreedy greedy) {
+                int exit1 = compile(node.next, scope.consumed);
+                int exit0 = compile(node.next, scope);
+                Body body = (next, empty) -> emit(CHAR, next, -1, -1, greedy.predicate);
+                return repeat(body, greedy.cMin, Integer.MAX_VALUE, true, exit0, exit1);
+            }
+            if (node instanceof Curly curly) {
+                if (curly.type != Qtype.GREEDY && curly.type != Qtype.LAZY) {
+                    throw new UnsupportedOperationException();
+                }
+                int exit1 = compile(node.next, scope.consumed);
+                int exit0 = compile(node.next, scope);
+                Body body = (next, empty) -> atom(curly.atom, next);
+                return repeat(body, curly.cmin, curly.cmax, curly.type == Qtype.GREEDY, exit0, exit1);
+            }
+            if (node instanceof Ques ques) {
+                if (ques.type != Qtype.GREEDY && ques.type != Qtype.LAZY) {
+                    throw new UnsupportedOperationException();
+                }
+                int exit1 = compile(node.next, scope.consumed);
+                int exit0 = compile(node.next, scope);
+                Body body = (next, empty) -> atom(ques.atom, next);
+                return repeat(body, 0, 1, ques.type == Qtype.GREEDY, exit0, exit1);
+            }
+            if (node instanceof Prolog prolog) {
+                Loop loop = prolog.loop;
+                int exit1 = compile(loop.next, scope.consumed);
+                int exit0 = compile(loop.next, scope);
+                Body body = (next, empty) -> {
+                    // Like Loop.match, an iteration that didn't consume anything leaves the loop,
+                    // so every copy of the body is compiled for both cases
+                    Scope after = new Scope();
+                    after.memo.put(loop, next);
+                    Scope before = new Scope();
+                    before.memo.put(loop, empty);
+                    before.consumed = after;
+                    return compile(loop.body, before);
+                };
+                return repeat(body, loop.cmin, loop.cmax, !(loop instanceof LazyLoop), exit0, exit1);
+            }
+            if (node instanceof Branch branch) {
+                int next = -1;
+                for (int n = branch.size - 1; n >= 0; n--) {
+                    Node atom = branch.atoms[n] != null ? branch.atoms[n] : branch.conn.next;
+                    int entry = compile(atom, scope);
+                    next = next < 0 ? entry : emit(SPLIT, entry, next, -1, null);
+                }
+                return next;
+            }
+            if (node instanceof BranchConn) {
+                return compile(node.next, scope);
+            }
+            if (node instanceof GroupHead head) {
+                return emit(SAVE, compile(node.next, scope), -1, head.tail.groupIndex, null);
+            }
+            if (node instanceof GroupTail tail) {
+                return emit(SAVE, compile(node.next, scope), -1, tail.groupIndex + 1, null);
+            }
+            if (node instanceof Begin) {
+                return assertion(BEGIN, compile(node.next, scope));
+            }
+            if (node instanceof End) {
+                return assertion(END, compile(node.next, scope));
+            }
+            if (node instanceof Dollar) {
+                return assertion(DOLLAR, compile(node.next, scope));
+            }
+            if (node instanceof Bound bound) {
+                if (bound.type != Bound.BOTH && bound.type != Bound.NONE) {
+                    throw new UnsupportedOperationException();
+                }
+                return assertion(bound.type == Bound.BOTH ? BOUNDARY : NOT_BOUNDARY, compile(node.next, scope));
+            }
+            if (node instanceof LineEnding) {
+                // \r\n first, then any single line ending, like LineEnding.match
+                int next = compile(node.next, scope.consumed);
+                int pair = emit(CHAR, emit(CHAR, next, -1, '\n', null), -1, '\r', null);
+                int single = emit(CHAR, next, -1, -1, ch -> ch == 0x0A || ch == 0x0B || ch == 0x0C || ch == 0x0D
+                    || ch == 0x85 || ch == 0x2028 || ch == 0x2029);
+                return emit(SPLIT, pair, single, -1, null);
+            }
+            // LastMatch, possessive groups, GroupCurly, and anything else
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Compiles a single character or a slice, which continues at {@code next}. Curly and
+         * Ques don't backtrack into their atom, so anything that could match in more than one way
+         * is left to backtracking.
+         */
+        private int atom(Node node, int next) {
+            if (node instanceof CharProperty property) {
+                return emit(CHAR, next, -1, -1, property.predicate);
+            }
+            if (node instanceof SliceU slice) {
+                for (int j = slice.buffer.length - 1; j >= 0; j--) {
+                    int c = slice.buffer[j];
+                    next = emit(CHAR, next, -1, -1, ch -> ch == c || Character.toLowerCase(Character.toUpperCase(ch)) == c);
+                }
+                return next;
+            }
+            if (node instanceof Slice slice && slice.buffer.length > 0) {
+                // Slices compare chars, put surrogate pairs back together
+                int[] buffer = slice.buffer;
+                for (int j = buffer.length - 1; j >= 0; j--) {
+                    int c = buffer[j];
+                    if (Character.isLowSurrogate((char) c) && j > 0 && Character.isHighSurrogate((char) buffer[j - 1])) {
+                        c = Character.toCodePoint((char) buffer[--j], (char) c);
+                    } else if (Character.isSurrogate((char) c)) {
+                        throw new UnsupportedOperationException();
+                    }
+                    next = emit(CHAR, next, -1, c, null);
+                }
+                return next;
+            }
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Repeats {@code body} between {@code cmin} and {@code cmax} times, by making a copy for
+         * every iteration. Unbounded repetitions loop on their last copy. The repetition is left
+         * at {@code exit0} if nothing was consumed, and at {@code exit1} otherwise.
+         */
+        private int repeat(Body body, int cmin, int cmax, boolean greedy, int exit0, int exit1) {
+            int next;
+            int count;
+            if (cmax == Integer.MAX_VALUE) {
+                int loop = emit(SPLIT, -1, -1, -1, null);
+                int entry = body.compile(loop, exit1);
+                out[loop] = greedy ? entry : exit1;
+                out1[loop] = greedy ? exit1 : entry;
+                next = loop;
+                count = Math.max(cmin, 1);
+            } else {
+                next = cmax == 0 ? exit0 : exit1;
+                count = cmax;
+            }
+            for (int k = count - 1; k >= 0; k--) {
+                int exit = k == 0 ? exit0 : exit1;
+                int entry = body.compile(next, exit);
+                if (k < cmin) {
+                    next = entry;
+                } else {
+                    next = greedy
+                        ? emit(SPLIT, entry, exit, -1, null)
+                        : emit(SPLIT, exit, entry, -1, null);
+                }
+            }
+            return next;
+        }
+
+        private int assertion(int assertion, int next) {
+            assertions |= 1 << assertion;
+            return emit(ASSERT, next, -1, assertion, null);
+        }
+
+        private int emit(int op, int out, int out1, int arg, CharPredicate predicate) {
+            if (length == MAX_INSTRUCTIONS) {
+                throw new UnsupportedOperationException();
+            }
+            if (length == this.op.length) {
+                int capacity = length * 2;
+                this.op = Arrays.copyOf(this.op, capacity);
+                this.out = Arrays.copyOf(this.out, capacity);
+                this.out1 = Arrays.copyOf(this.out1, capacity);
+                this.arg = Arrays.copyOf(this.arg, capacity);
+                this.predicate = Arrays.copyOf(this.predicate, capacity);
+            }
+            this.op[length] = op;
+            this.out[length] = out;
+            this.out1[length] = out1;
+            this.arg[length] = arg;
+            this.predicate[length] = predicate;
+            return length++;
+        }
+    }
+
+    /**
+     * The nodes compiled so far, and where to go once something has been consumed. Inside a loop
+     * body the nodes are compiled twice, before and after the iteration consumed anything.
+     */
+    private static final class Scope {
+        final Map<Node, Integer> memo = new IdentityHashMap<>();
+        Scope consumed = this;
+    }
+
+    @FunctionalInterface
+    private interface Body {
+        /**
+         * Compiles one iteration, which continues at {@code next}, or at {@code empty} when it
+         * didn't consume anything.
+         */
+        int compile(int next, int empty);
+    }
+}
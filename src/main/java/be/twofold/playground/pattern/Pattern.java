@@ -25,10 +25,20 @@
 
 package be.twofold.playground.pattern;
 
+import java.nio.*;
+import java.nio.charset.*;
 import java.util.*;
+import java.util.function.*;
 
 public final class Pattern {
 
+    /**
+     * The matcher the predicates fall back to when the automaton cannot
+     * decide, shared by all patterns on a thread. It is pointed at each
+     * pattern in turn, so it keeps at most the last one reachable.
+     */
+    private static final ThreadLocal<Matcher> MATCHER = new ThreadLocal<>();
+
     /**
      * The original regular-expression pattern string.
      *
@@ -65,6 +75,38 @@ public final class Pattern {
      */
     private transient int[] temp;
 
+    /**
+     * If the Start node might possibly match supplementary characters.
+     * It is set to true during compiling if
+     * (1) There is supplementary char in pattern, or
+     * (2) There is complement node of a "family" CharProperty
+     */
+    transient boolean hasSupplementary;
+
+    /**
+     * The automaton that runs this pattern instead of the node tree, or
+     * {@code null} if it has to backtrack.
+     */
+    transient Nfa nfa;
+
+    /**
+     * A literal every match contains, used to skip ahead in a search, or
+     * {@code null} if there is none.
+     */
+    transient Prefilter prefilter;
+
+    /**
+     * The number of capturing groups in this Pattern. Used by matchers to
+     * allocate storage needed to perform a match.
+     */
+    transient int capturingGroupCount;
+
+    /**
+     * The local variable count used by parsing tree. Used by matchers to
+     * allocate storage needed to perform a match.
+     */
+    transient int localCount;
+
     /**
      * Index into the pattern string that keeps track of how much has been
      * parsed.
@@ -122,6 +164,142 @@ public final class Pattern {
         return pattern;
     }
 
+    /**
+     * Creates a matcher that will match the given input against this pattern.
+     *
+     * @param input The character sequence to be matched
+     * @return A new matcher for this pattern
+     */
+    public Matcher matcher(CharSequence input) {
+        return new Matcher(this, input);
+    }
+
+    /**
+     * Returns the number of capturing groups in this pattern, not counting
+     * group zero.
+     *
+     * @return The number of capturing groups in this pattern
+     */
+    public int groupCount() {
+        return capturingGroupCount - 1;
+    }
+
+    /**
+     * Creates a predicate that tests if this pattern is found in a given input
+     * string.
+     *
+     * @return The predicate which can be used for finding a match on a
+     * subsequence of a string
+     */
+    public Predicate<String> asPredicate() {
+        return s -> test(s, false);
+    }
+
+    /**
+     * Creates a predicate that tests if this pattern matches a given input
+     * string.
+     *
+     * @return The predicate which can be used for matching an input string
+     * against this pattern.
+     */
+    public Predicate<String> asMatchPredicate() {
+        return s -> test(s, true);
+    }
+
+    /**
+     * Tests if this pattern is found in the UTF-8 encoded input, without
+     * decoding it to a string first.
+     *
+     * @param input The UTF-8 encoded bytes to be tested
+     * @return {@code true} if this pattern matches somewhere in the input
+     * @see #find(ByteBuffer)
+     */
+    public boolean find(byte[] input) {
+        return test(ByteBuffer.wrap(input), false);
+    }
+
+    /**
+     * Tests if this pattern is found in the UTF-8 encoded bytes between the
+     * position and the limit of the buffer, without decoding them to a string
+     * first. The position of the buffer doesn't change.
+     *
+     * <p>Malformed input is matched as if every malformed sequence was
+     * replaced with U+FFFD, like {@link String#String(byte[], Charset)}
+     * does. Patterns that need backtracking still decode the input.
+     *
+     * @param input The UTF-8 encoded bytes to be tested
+     * @return {@code true} if this pattern matches somewhere in the input
+     */
+    public boolean find(ByteBuffer input) {
+        return test(input, false);
+    }
+
+    /**
+     * Tests if this pattern matches all of the UTF-8 encoded input, without
+     * decoding it to a string first.
+     *
+     * @param input The UTF-8 encoded bytes to be matched
+     * @return {@code true} if the whole input matches this pattern
+     * @see #matches(ByteBuffer)
+     */
+    public boolean matches(byte[] input) {
+        return test(ByteBuffer.wrap(input), true);
+    }
+
+    /**
+     * Tests if this pattern matches all of the UTF-8 encoded bytes between
+     * the position and the limit of the buffer, like {@link #find(ByteBuffer)}.
+     *
+     * @param input The UTF-8 encoded bytes to be matched
+     * @return {@code true} if all of the bytes match this pattern
+     */
+    public boolean matches(ByteBuffer input) {
+        return test(input, true);
+    }
+
+    private boolean test(ByteBuffer input, boolean entire) {
+        if (prefilter != null && !entire && !prefilter.occursIn(input)) {
+            return false;
+        }
+        if (nfa != null) {
+            int result = nfa.test(input, entire);
+            if (result != Dfa.UNKNOWN) {
+                return result == Dfa.MATCH;
+            }
+        }
+        return test(StandardCharsets.UTF_8.decode(input.duplicate()), entire);
+    }
+
+    boolean test(CharSequence input, boolean entire) {
+        int start = 0;
+        if (prefilter != null && !entire) {
+            start = prefilter.start(input, 0, input.length(), hasSupplementary);
+            if (start < 0) {
+                return false;
+            }
+        }
+        if (nfa != null) {
+            // Without groups the DFA is enough, unless it gave up
+            int result = nfa.test(input, start, entire);
+            if (result != Dfa.UNKNOWN) {
+                return result == Dfa.MATCH;
+            }
+        }
+        // A matcher still holding text is busy further up this thread's stack
+        Matcher matcher = MATCHER.get();
+        if (matcher == null || matcher.text != null) {
+            matcher = matcher(input);
+            MATCHER.set(matcher);
+        } else {
+            matcher.reset(this, input);
+        }
+        try {
+            return entire ? matcher.matches() : matcher.find();
+        } finally {
+            matcher.text = null;
+        }
+    }
+
     /**
      * Returns a literal pattern {@code String} for the specified
      * {@code String}.
@@ -169,6 +347,10 @@ public final class Pattern {
         this.pattern = pattern;
         this.caseInsensitive = caseInsensitive;
 
+        // Reset group index count
+        capturingGroupCount = 1;
+        localCount = 0;
+
         if (!this.pattern.isEmpty()) {
             try {
                 compile();
@@ -200,6 +382,7 @@ public final class Pattern {
             temp[count++] = c;
         }
 
+        hasSupplementary = count < patternLength;
         patternLength = count;   // patternLength now in code points
 
         // Allocate all temporary objects here.
@@ -220,14 +403,20 @@ public final class Pattern {
         if (matchRoot instanceof Slice) {
             root = BnM.optimize(matchRoot);
             if (root == matchRoot) {
-                root = new Start(matchRoot);
+                root = hasSupplementary ? new StartS(matchRoot) : new Start(matchRoot);
             }
         } else if (matchRoot instanceof Begin) {
             root = matchRoot;
         } else {
-            root = new Start(matchRoot);
+            root = hasSupplementary ? new StartS(matchRoot) : new Start(matchRoot);
         }
 
+        // A literal can't backtrack, everything else gets an automaton if possible
+        if (!(matchRoot instanceof SliceNode && matchRoot.next == lastAccept)) {
+            nfa = Nfa.compile(this);
+        }
+        prefilter = Prefilter.of(this);
+
         // Release temporary storage
         temp = null;
         buffer = null;
@@ -794,7 +983,9 @@ public final class Pattern {
             if (upper != lower)
                 return SingleU(lower);
         }
-        return Single(ch);  // Match a given BMP character
+        if (Character.isSupplementaryCodePoint(ch))
+            return SingleS(ch);    // Match a given Unicode character
+        return Single(ch);         // Match a given BMP character
     }
 
     /**
@@ -931,6 +1122,7 @@ public final class Pattern {
             // it might be too expensive to detect if a complement of
             // CharProperty can match "certain" supplementary. So just
             // go with StartS.
+            hasSupplementary = true;
             p = p.negate();
         }
         return p;
@@ -942,6 +1134,7 @@ public final class Pattern {
         if (p instanceof BmpCharPredicate)
             return new BmpCharProperty((BmpCharPredicate) p);
         else {
+            hasSupplementary = true;
             return new CharProperty(p);
         }
     }
@@ -995,13 +1188,21 @@ public final class Pattern {
                 root = node;
                 return node;
             }
+            if (isAtomicBody(head.next, tail)) {
+                GroupTail groupTail = (GroupTail) tail;
+                head = root = new GroupCurly(head.next, curly.cmin, curly.cmax, curly.type,
+                    groupTail.localIndex, groupTail.groupIndex);
+                return head;
+            }
+            int temp = ((GroupHead) head).localIndex;
             Loop loop;
             if (curly.type == Qtype.GREEDY) {
-                loop = new Loop();
+                loop = new Loop(this.localCount, temp);
             } else {  // Reluctant Curly
-                loop = new LazyLoop();
+                loop = new LazyLoop(this.localCount, temp);
             }
             Prolog prolog = new Prolog(loop);
+            this.localCount += 1;
             loop.cmin = curly.cmin;
             loop.cmax = curly.cmax;
             loop.body = head;
@@ -1012,14 +1213,60 @@ public final class Pattern {
         throw error("Internal logic error");
     }
 
+    /**
+     * Returns if a quantified group with this body doesn't backtrack into an
+     * iteration. Like java.util.regex, a body that can only match in one way
+     * is repeated with a GroupCurly. Without a \R in it, a Loop matches the
+     * same and can still run on the automaton.
+     */
+    private static boolean isAtomicBody(Node node, Node end) {
+        boolean lineEnding = false;
+        for (; node != end; node = node.next) {
+            if (node instanceof LineEnding || node instanceof GroupCurly group && group.cmin == group.cmax
+                || node instanceof Curly curly && curly.atom instanceof LineEnding && isDeterministic(curly)) {
+                lineEnding = true;
+            } else if (node instanceof Prolog prolog) {
+                Loop loop = prolog.loop;
+                if (loop.cmin != loop.cmax || !isDeterministic(loop.body, loop)) {
+                    return false;
+                }
+                node = loop;
+            } else if (!isDeterministic(node)) {
+                return false;
+            }
+        }
+        return lineEnding;
+    }
+
+    private static boolean isDeterministic(Node node, Node end) {
+        for (; node != end; node = node.next) {
+            if (node instanceof Prolog || !isDeterministic(node)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDeterministic(Node node) {
+        if (node instanceof Curly curly) {
+            return curly.cmin == curly.cmax && (curly.atom instanceof CharProperty
+                || curly.atom instanceof SliceNode || curly.atom instanceof LineEnding);
+        }
+        return node instanceof CharProperty || node instanceof SliceNode || node instanceof GroupHead
+            || node instanceof GroupTail || node instanceof Begin || node instanceof End
+            || node instanceof Dollar || node instanceof Bound || node instanceof LineEnding;
+    }
+
     /**
      * Create group head and tail nodes using double return. If the group is
      * created with anonymous true then it is a pure group and should not
      * affect group counting.
      */
     private Node createGroup() {
-        GroupHead head = new GroupHead();
-        root = new GroupTail();
+        int localIndex = localCount++;
+        int groupIndex = capturingGroupCount++;
+        GroupHead head = new GroupHead(localIndex);
+        root = new GroupTail(localIndex, groupIndex);
 
         // for debug/print only, head.match does NOT need the "tail" info
         head.tail = (GroupTail) root;
@@ -1226,14 +1473,27 @@ public final class Pattern {
      * Utility method for creating a string slice matcher.
      */
     private Node newSlice(int[] buf, int count) {
-        int[] tmp = new int[count];
         if (caseInsensitive) {
+            int[] tmp = new int[count];
             for (int i = 0; i < count; i++) {
                 tmp[i] = Character.toLowerCase(Character.toUpperCase(buf[i]));
             }
             return new SliceU(tmp);
         }
-        System.arraycopy(buf, 0, tmp, 0, count);
+        // Slice compares chars, so supplementary characters are stored as surrogate pairs
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            length += Character.charCount(buf[i]);
+        }
+        int[] tmp = new int[length];
+        for (int i = 0, j = 0; i < count; i++) {
+            if (Character.isSupplementaryCodePoint(buf[i])) {
+                tmp[j++] = Character.highSurrogate(buf[i]);
+                tmp[j++] = Character.lowSurrogate(buf[i]);
+            } else {
+                tmp[j++] = buf[i];
+            }
+        }
         return new Slice(tmp);
     }
 
@@ -1248,9 +1508,32 @@ public final class Pattern {
         Node() {
             next = Pattern.accept;
         }
+
+        /**
+         * This method implements the classic accept node.
+         */
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            matcher.last = i;
+            matcher.groups[0] = matcher.first;
+            matcher.groups[1] = i;
+            return true;
+        }
     }
 
     static class LastNode extends Node {
+        /**
+         * This method implements the classic accept node with
+         * the addition of a check to see if the match occurred
+         * using all of the input.
+         */
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            if (matcher.acceptMode == Matcher.ENDANCHOR && i != matcher.to)
+                return false;
+            matcher.last = i;
+            matcher.groups[0] = matcher.first;
+            matcher.groups[1] = i;
+            return true;
+        }
     }
 
     /**
@@ -1263,6 +1546,19 @@ public final class Pattern {
         Start(Node node) {
             this.next = node;
         }
+
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            for (int guard = matcher.to; i <= guard; i++) {
+                if (next.match(matcher, i, seq)) {
+                    matcher.first = i;
+                    matcher.groups[0] = matcher.first;
+                    matcher.groups[1] = matcher.last;
+                    return true;
+                }
+            }
+            matcher.hitEnd = true;
+            return false;
+        }
     }
 
     /**
@@ -1270,7 +1566,51 @@ public final class Pattern {
      * match for a \A sequence, and the caret anchor will use this if not in
      * multiline mode.
      */
+    /**
+     * StartS supports supplementary characters, including unpaired
+     * surrogates.
+     */
+    static final class StartS extends Start {
+        StartS(Node node) {
+            super(node);
+        }
+
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            int guard = matcher.to;
+            while (i <= guard) {
+                if (next.match(matcher, i, seq)) {
+                    matcher.first = i;
+                    matcher.groups[0] = matcher.first;
+                    matcher.groups[1] = matcher.last;
+                    return true;
+                }
+                if (i == guard)
+                    break;
+                // Optimization to move to the next character. This is
+                // faster than countChars(seq, i, 1).
+                if (Character.isHighSurrogate(seq.charAt(i++))) {
+                    if (i < seq.length() &&
+                        Character.isLowSurrogate(seq.charAt(i))) {
+                        i++;
+                    }
+                }
+            }
+            matcher.hitEnd = true;
+            return false;
+        }
+    }
+
     static final class Begin extends Node {
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            if (i == matcher.from && next.match(matcher, i, seq)) {
+                matcher.first = i;
+                matcher.groups[0] = i;
+                matcher.groups[1] = matcher.last;
+                return true;
+            } else {
+                return false;
+            }
+        }
     }
 
     /**
@@ -1278,6 +1618,13 @@ public final class Pattern {
      * should not match at the last newline before the end as $ will.
      */
     static final class End extends Node {
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            if (i == matcher.to) {
+                matcher.hitEnd = true;
+                return next.match(matcher, i, seq);
+            }
+            return false;
+        }
     }
 
     /**
@@ -1285,6 +1632,11 @@ public final class Pattern {
      * This is used for the \G construct.
      */
     static final class LastMatch extends Node {
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            if (i != matcher.oldLast)
+                return false;
+            return next.match(matcher, i, seq);
+        }
     }
 
     /**
@@ -1301,12 +1653,64 @@ public final class Pattern {
      * line terminators themselves.
      */
     static final class Dollar extends Node {
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            int endIndex = matcher.to;
+            if (i < endIndex - 2)
+                return false;
+            if (i == endIndex - 2) {
+                if (seq.charAt(i) != '\r' || seq.charAt(i + 1) != '\n')
+                    return false;
+            }
+            // Matches before a line terminator at the very end of input,
+            // or at the end of input itself
+            if (i < endIndex) {
+                char ch = seq.charAt(i);
+                if (ch == '\n') {
+                    // No match between \r\n
+                    if (i > 0 && seq.charAt(i - 1) == '\r')
+                        return false;
+                } else if (ch != '\r' && ch != '\u0085' && (ch | 1) != '\u2029') {
+                    // No line terminator, no match
+                    return false;
+                }
+            }
+            // Matched at current end so hit end
+            matcher.hitEnd = true;
+            // If a $ matches because of end of input, then more input
+            // could cause it to fail!
+            matcher.requireEnd = true;
+            return next.match(matcher, i, seq);
+        }
     }
 
     /**
      * Node class that matches a Unicode line ending '\R'
      */
     static final class LineEnding extends Node {
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            // (u+000Du+000A|[u+000Au+000Bu+000Cu+000Du+0085u+2028u+2029])
+            if (i < matcher.to) {
+                int ch = seq.charAt(i);
+                if (ch == 0x0A || ch == 0x0B || ch == 0x0C ||
+                    ch == 0x85 || ch == 0x2028 || ch == 0x2029)
+                    return next.match(matcher, i + 1, seq);
+                if (ch == 0x0D) {
+                    i++;
+                    if (i < matcher.to) {
+                        if (seq.charAt(i) == 0x0A &&
+                            next.match(matcher, i + 1, seq)) {
+                            return true;
+                        }
+                    } else {
+                        matcher.hitEnd = true;
+                    }
+                    return next.match(matcher, i, seq);
+                }
+            } else {
+                matcher.hitEnd = true;
+            }
+            return false;
+        }
     }
 
     /**
@@ -1319,6 +1723,19 @@ public final class Pattern {
         CharProperty(CharPredicate predicate) {
             this.predicate = predicate;
         }
+
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            if (i < matcher.to) {
+                int ch = Character.codePointAt(seq, i);
+                i += Character.charCount(ch);
+                if (i <= matcher.to) {
+                    return predicate.is(ch) &&
+                        next.match(matcher, i, seq);
+                }
+            }
+            matcher.hitEnd = true;
+            return false;
+        }
     }
 
     /**
@@ -1329,6 +1746,16 @@ public final class Pattern {
         BmpCharProperty(BmpCharPredicate predicate) {
             super(predicate);
         }
+
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            if (i < matcher.to) {
+                return predicate.is(seq.charAt(i)) &&
+                    next.match(matcher, i + 1, seq);
+            } else {
+                matcher.hitEnd = true;
+                return false;
+            }
+        }
     }
 
     /**
@@ -1350,6 +1777,20 @@ public final class Pattern {
         Slice(int[] buf) {
             super(buf);
         }
+
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            int[] buf = buffer;
+            int len = buf.length;
+            for (int j = 0; j < len; j++) {
+                if ((i + j) >= matcher.to) {
+                    matcher.hitEnd = true;
+                    return false;
+                }
+                if (buf[j] != seq.charAt(i + j))
+                    return false;
+            }
+            return next.match(matcher, i + len, seq);
+        }
     }
 
     /**
@@ -1360,6 +1801,27 @@ public final class Pattern {
         SliceU(int[] buf) {
             super(buf);
         }
+
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            int[] buf = buffer;
+            int x = i;
+            for (int j = 0; j < buf.length; j++) {
+                if (x >= matcher.to) {
+                    matcher.hitEnd = true;
+                    return false;
+                }
+                int c = Character.codePointAt(seq, x);
+                if (buf[j] != c &&
+                    buf[j] != Character.toLowerCase(Character.toUpperCase(c)))
+                    return false;
+                x += Character.charCount(c);
+                if (x > matcher.to) {
+                    matcher.hitEnd = true;
+                    return false;
+                }
+            }
+            return next.match(matcher, x, seq);
+        }
     }
 
     /**
@@ -1373,6 +1835,22 @@ public final class Pattern {
             this.atom = node;
             this.type = type;
         }
+
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            switch (type) {
+                case GREEDY:
+                    return (atom.match(matcher, i, seq) && next.match(matcher, matcher.last, seq))
+                        || next.match(matcher, i, seq);
+                case LAZY:
+                    return next.match(matcher, i, seq)
+                        || (atom.match(matcher, i, seq) && next.match(matcher, matcher.last, seq));
+                case POSSESSIVE:
+                    if (atom.match(matcher, i, seq)) i = matcher.last;
+                    return next.match(matcher, i, seq);
+                default:
+                    return atom.match(matcher, i, seq) && next.match(matcher, matcher.last, seq);
+            }
+        }
     }
 
     /**
@@ -1388,12 +1866,66 @@ public final class Pattern {
             this.cMin = cMin;
         }
 
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            int starti = i;
+            int n = 0;
+            int to = matcher.to;
+            // greedy, all the way down
+            while (i < to) {
+                int ch = Character.codePointAt(seq, i);
+                int len = Character.charCount(ch);
+                if (i + len > to) {
+                    // the region cut off the high half of a surrogate pair
+                    matcher.hitEnd = true;
+                    ch = seq.charAt(i);
+                    len = 1;
+                }
+                if (!predicate.is(ch))
+                    break;
+                i += len;
+                n++;
+            }
+            if (i >= to) {
+                matcher.hitEnd = true;
+            }
+            while (n >= cMin) {
+                if (next.match(matcher, i, seq))
+                    return true;
+                if (n == cMin)
+                    return false;
+                // backing off if match fails
+                int ch = Character.codePointBefore(seq, i);
+                // check if the region cut off the low half of a surrogate pair
+                i = Math.max(starti, i - Character.charCount(ch));
+                n--;
+            }
+            return false;
+        }
     }
 
     static final class BmpCharPropertyGreedy extends CharPropertyGreedy {
         BmpCharPropertyGreedy(BmpCharProperty bcp, int cmin) {
             super(bcp, cmin);
         }
+
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            int n = 0;
+            int to = matcher.to;
+            while (i < to && predicate.is(seq.charAt(i))) {
+                i++;
+                n++;
+            }
+            if (i >= to) {
+                matcher.hitEnd = true;
+            }
+            while (n >= cMin) {
+                if (next.match(matcher, i, seq))
+                    return true;
+                i--;
+                n--;  // backing off if match fails
+            }
+            return false;
+        }
     }
 
     /**
@@ -1413,6 +1945,251 @@ public final class Pattern {
             this.cmin = cmin;
             this.cmax = cmax;
         }
+
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            int j;
+            for (j = 0; j < cmin; j++) {
+                if (atom.match(matcher, i, seq)) {
+                    i = matcher.last;
+                    continue;
+                }
+                return false;
+            }
+            if (type == Qtype.GREEDY)
+                return match0(matcher, i, j, seq);
+            else if (type == Qtype.LAZY)
+                return match1(matcher, i, j, seq);
+            else
+                return match2(matcher, i, j, seq);
+        }
+
+        // Greedy match.
+        // i is the index to start matching at
+        // j is the number of atoms that have matched
+        boolean match0(Matcher matcher, int i, int j, CharSequence seq) {
+            if (j >= cmax) {
+                // We have matched the maximum... continue with the rest of
+                // the regular expression
+                return next.match(matcher, i, seq);
+            }
+            int backLimit = j;
+            while (atom.match(matcher, i, seq)) {
+                // k is the length of this match
+                int k = matcher.last - i;
+                if (k == 0) // Zero length match
+                    break;
+                // Move up index and number matched
+                i = matcher.last;
+                j++;
+                // We are greedy so match as many as we can
+                while (j < cmax) {
+                    if (!atom.match(matcher, i, seq))
+                        break;
+                    if (i + k != matcher.last) {
+                        if (match0(matcher, matcher.last, j + 1, seq))
+                            return true;
+                        break;
+                    }
+                    i += k;
+                    j++;
+                }
+                // Handle backing off if match fails
+                while (j >= backLimit) {
+                    if (next.match(matcher, i, seq))
+                        return true;
+                    i -= k;
+                    j--;
+                }
+                return false;
+            }
+            return next.match(matcher, i, seq);
+        }
+
+        // Reluctant match. At this point, the minimum has been satisfied.
+        // i is the index to start matching at
+        // j is the number of atoms that have matched
+        boolean match1(Matcher matcher, int i, int j, CharSequence seq) {
+            for (; ; ) {
+                // Try finishing match without consuming any more
+                if (next.match(matcher, i, seq))
+                    return true;
+                // At the maximum, no match found
+                if (j >= cmax)
+                    return false;
+                // Okay, must try one more atom
+                if (!atom.match(matcher, i, seq))
+                    return false;
+                // If we haven't moved forward then must break out
+                if (i == matcher.last)
+                    return false;
+                // Move up index and number matched
+                i = matcher.last;
+                j++;
+            }
+        }
+
+        // Possessive match.
+        boolean match2(Matcher matcher, int i, int j, CharSequence seq) {
+            for (; j < cmax; j++) {
+                if (!atom.match(matcher, i, seq))
+                    break;
+                if (i == matcher.last)
+                    break;
+                i = matcher.last;
+            }
+            return next.match(matcher, i, seq);
+        }
+    }
+
+    /**
+     * Handles the curly-brace style repetition with a specified minimum and
+     * maximum occurrences in deterministic cases. This is an iterative
+     * optimization over the Prolog and Loop system which would handle this
+     * in a recursive way. The * quantifier is handled as a special case.
+     * This class saves group settings so that the groups are unset when
+     * backing off of a group match.
+     */
+    static final class GroupCurly extends Node {
+        final Node atom;
+        final Qtype type;
+        final int cmin;
+        final int cmax;
+        final int localIndex;
+        final int groupIndex;
+
+        GroupCurly(Node node, int cmin, int cmax, Qtype type, int local, int group) {
+            this.atom = node;
+            this.type = type;
+            this.cmin = cmin;
+            this.cmax = cmax;
+            this.localIndex = local;
+            this.groupIndex = group;
+        }
+
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            int[] groups = matcher.groups;
+            int[] locals = matcher.locals;
+            int save0 = locals[localIndex];
+            int save1 = groups[groupIndex];
+            int save2 = groups[groupIndex + 1];
+
+            // Notify GroupTail there is no need to setup group info
+            // because it will be set here
+            locals[localIndex] = -1;
+
+            boolean ret = true;
+            for (int j = 0; j < cmin; j++) {
+                if (atom.match(matcher, i, seq)) {
+                    groups[groupIndex] = i;
+                    groups[groupIndex + 1] = matcher.last;
+                    i = matcher.last;
+                } else {
+                    ret = false;
+                    break;
+                }
+            }
+            if (ret) {
+                if (type == Qtype.GREEDY) {
+                    ret = match0(matcher, i, cmin, seq);
+                } else if (type == Qtype.LAZY) {
+                    ret = match1(matcher, i, cmin, seq);
+                } else {
+                    ret = match2(matcher, i, cmin, seq);
+                }
+            }
+            if (!ret) {
+                locals[localIndex] = save0;
+                groups[groupIndex] = save1;
+                groups[groupIndex + 1] = save2;
+            }
+            return ret;
+        }
+
+        // Aggressive group match
+        boolean match0(Matcher matcher, int i, int j, CharSequence seq) {
+            // don't back off passing the starting "j"
+            int min = j;
+            int[] groups = matcher.groups;
+            int save0 = groups[groupIndex];
+            int save1 = groups[groupIndex + 1];
+            for (; ; ) {
+                if (j >= cmax)
+                    break;
+                if (!atom.match(matcher, i, seq))
+                    break;
+                int k = matcher.last - i;
+                if (k <= 0) {
+                    groups[groupIndex] = i;
+                    groups[groupIndex + 1] = i + k;
+                    i = i + k;
+                    break;
+                }
+                for (; ; ) {
+                    groups[groupIndex] = i;
+                    groups[groupIndex + 1] = i + k;
+                    i = i + k;
+                    if (++j >= cmax)
+                        break;
+                    if (!atom.match(matcher, i, seq))
+                        break;
+                    if (i + k != matcher.last) {
+                        if (match0(matcher, i, j, seq))
+                            return true;
+                        break;
+                    }
+                }
+                while (j > min) {
+                    if (next.match(matcher, i, seq)) {
+                        groups[groupIndex + 1] = i;
+                        groups[groupIndex] = i - k;
+                        return true;
+                    }
+                    // backing off
+                    i = i - k;
+                    groups[groupIndex + 1] = i;
+                    groups[groupIndex] = i - k;
+                    j--;
+                }
+                break;
+            }
+            groups[groupIndex] = save0;
+            groups[groupIndex + 1] = save1;
+            return next.match(matcher, i, seq);
+        }
+
+        // Reluctant matching
+        boolean match1(Matcher matcher, int i, int j, CharSequence seq) {
+            for (; ; ) {
+                if (next.match(matcher, i, seq))
+                    return true;
+                if (j >= cmax)
+                    return false;
+                if (!atom.match(matcher, i, seq))
+                    return false;
+                if (i == matcher.last)
+                    return false;
+                matcher.groups[groupIndex] = i;
+                matcher.groups[groupIndex + 1] = matcher.last;
+                i = matcher.last;
+                j++;
+            }
+        }
+
+        // Possessive matching
+        boolean match2(Matcher matcher, int i, int j, CharSequence seq) {
+            for (; j < cmax; j++) {
+                if (!atom.match(matcher, i, seq)) {
+                    break;
+                }
+                matcher.groups[groupIndex] = i;
+                matcher.groups[groupIndex + 1] = matcher.last;
+                if (i == matcher.last) {
+                    break;
+                }
+                i = matcher.last;
+            }
+            return next.match(matcher, i, seq);
+        }
     }
 
     /**
@@ -1423,6 +2200,9 @@ public final class Pattern {
      * "next".
      */
     static final class BranchConn extends Node {
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            return next.match(matcher, i, seq);
+        }
     }
 
     /**
@@ -1449,6 +2229,18 @@ public final class Pattern {
             }
             atoms[size++] = node;
         }
+
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            for (int n = 0; n < size; n++) {
+                if (atoms[n] == null) {
+                    if (conn.next.match(matcher, i, seq))
+                        return true;
+                } else if (atoms[n].match(matcher, i, seq)) {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
 
     /**
@@ -1461,7 +2253,20 @@ public final class Pattern {
      * doesn't match.
      */
     static final class GroupHead extends Node {
+        final int localIndex;
         GroupTail tail;    // for debug/print only, match does not need to know
+
+        GroupHead(int localCount) {
+            localIndex = localCount;
+        }
+
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            int save = matcher.locals[localIndex];
+            matcher.locals[localIndex] = i;
+            boolean ret = next.match(matcher, i, seq);
+            matcher.locals[localIndex] = save;
+            return ret;
+        }
     }
 
     /**
@@ -1473,6 +2278,36 @@ public final class Pattern {
      * and in that case no group information needs to be set.
      */
     static final class GroupTail extends Node {
+        final int localIndex;
+        final int groupIndex;
+
+        GroupTail(int localCount, int groupCount) {
+            localIndex = localCount;
+            groupIndex = groupCount + groupCount;
+        }
+
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            int tmp = matcher.locals[localIndex];
+            if (tmp >= 0) { // This is the normal group case.
+                // Save the group so we can unset it if it
+                // backs off of a match.
+                int groupStart = matcher.groups[groupIndex];
+                int groupEnd = matcher.groups[groupIndex + 1];
+
+                matcher.groups[groupIndex] = tmp;
+                matcher.groups[groupIndex + 1] = i;
+                if (next.match(matcher, i, seq)) {
+                    return true;
+                }
+                matcher.groups[groupIndex] = groupStart;
+                matcher.groups[groupIndex + 1] = groupEnd;
+                return false;
+            } else {
+                // The body of a GroupCurly, which sets the group itself
+                matcher.last = i;
+                return true;
+            }
+        }
     }
 
     /**
@@ -1484,6 +2319,10 @@ public final class Pattern {
         Prolog(Loop loop) {
             this.loop = loop;
         }
+
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            return loop.matchInit(matcher, i, seq);
+        }
     }
 
     /**
@@ -1494,7 +2333,65 @@ public final class Pattern {
      */
     static class Loop extends Node {
         Node body;
+        final int countIndex; // local count index in matcher locals
+        final int beginIndex; // group beginning index
         int cmin, cmax;
+
+        Loop(int countIndex, int beginIndex) {
+            this.countIndex = countIndex;
+            this.beginIndex = beginIndex;
+        }
+
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            // Avoid infinite loop in zero-length case.
+            if (i > matcher.locals[beginIndex]) {
+                int count = matcher.locals[countIndex];
+
+                // This block is for before we reach the minimum
+                // iterations required for the loop to match
+                if (count < cmin) {
+                    matcher.locals[countIndex] = count + 1;
+                    boolean b = body.match(matcher, i, seq);
+                    // If match failed we must backtrack, so
+                    // the loop count should NOT be incremented
+                    if (!b)
+                        matcher.locals[countIndex] = count;
+                    // Return success or failure since we are under
+                    // minimum
+                    return b;
+                }
+                // This block is for after we have the minimum
+                // iterations required for the loop to match
+                if (count < cmax) {
+                    matcher.locals[countIndex] = count + 1;
+                    boolean b = body.match(matcher, i, seq);
+                    // If match failed we must backtrack, so
+                    // the loop count should NOT be incremented
+                    if (b)
+                        return true;
+                    matcher.locals[countIndex] = count;
+                }
+            }
+            return next.match(matcher, i, seq);
+        }
+
+        boolean matchInit(Matcher matcher, int i, CharSequence seq) {
+            int save = matcher.locals[countIndex];
+            boolean ret;
+            if (0 < cmin) {
+                matcher.locals[countIndex] = 1;
+                ret = body.match(matcher, i, seq);
+            } else if (0 < cmax) {
+                matcher.locals[countIndex] = 1;
+                ret = body.match(matcher, i, seq);
+                if (!ret)
+                    ret = next.match(matcher, i, seq);
+            } else {
+                ret = next.match(matcher, i, seq);
+            }
+            matcher.locals[countIndex] = save;
+            return ret;
+        }
     }
 
     /**
@@ -1504,6 +2401,54 @@ public final class Pattern {
      * normal match but is skipped in the matchInit.
      */
     static final class LazyLoop extends Loop {
+        LazyLoop(int countIndex, int beginIndex) {
+            super(countIndex, beginIndex);
+        }
+
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            // Check for zero length group
+            if (i > matcher.locals[beginIndex]) {
+                int count = matcher.locals[countIndex];
+                if (count < cmin) {
+                    matcher.locals[countIndex] = count + 1;
+                    boolean result = body.match(matcher, i, seq);
+                    // If match failed we must backtrack, so
+                    // the loop count should NOT be incremented
+                    if (!result)
+                        matcher.locals[countIndex] = count;
+                    return result;
+                }
+                if (next.match(matcher, i, seq))
+                    return true;
+                if (count < cmax) {
+                    matcher.locals[countIndex] = count + 1;
+                    boolean result = body.match(matcher, i, seq);
+                    // If match failed we must backtrack, so
+                    // the loop count should NOT be incremented
+                    if (!result)
+                        matcher.locals[countIndex] = count;
+                    return result;
+                }
+                return false;
+            }
+            return next.match(matcher, i, seq);
+        }
+
+        boolean matchInit(Matcher matcher, int i, CharSequence seq) {
+            int save = matcher.locals[countIndex];
+            boolean ret = false;
+            if (0 < cmin) {
+                matcher.locals[countIndex] = 1;
+                ret = body.match(matcher, i, seq);
+            } else if (next.match(matcher, i, seq)) {
+                ret = true;
+            } else if (0 < cmax) {
+                matcher.locals[countIndex] = 1;
+                ret = body.match(matcher, i, seq);
+            }
+            matcher.locals[countIndex] = save;
+            return ret;
+        }
     }
 
     /**
@@ -1514,6 +2459,8 @@ public final class Pattern {
      * they are ignored for purposes of finding word boundaries.
      */
     static final class Bound extends Node {
+        static final int LEFT = 0x1;
+        static final int RIGHT = 0x2;
         static final int BOTH = 0x3;
         static final int NONE = 0x4;
         final int type;
@@ -1521,6 +2468,56 @@ public final class Pattern {
         Bound(int n) {
             type = n;
         }
+
+        static boolean isWord(int ch) {
+            // Consistent with \w, which only covers ASCII
+            return ch < 128 && ASCII.isWord(ch);
+        }
+
+        int check(Matcher matcher, int i, CharSequence seq) {
+            int ch;
+            boolean left = false;
+            int startIndex = matcher.from;
+            int endIndex = matcher.to;
+            if (i > startIndex) {
+                ch = Character.codePointBefore(seq, i);
+                left = (isWord(ch) || ((Character.getType(ch) == Character.NON_SPACING_MARK)
+                    && hasBaseCharacter(matcher.from, i - 1, seq)));
+            }
+            boolean right = false;
+            if (i < endIndex) {
+                ch = Character.codePointAt(seq, i);
+                right = (isWord(ch) || ((Character.getType(ch) == Character.NON_SPACING_MARK)
+                    && hasBaseCharacter(matcher.from, i, seq)));
+            } else {
+                // Tried to access char past the end
+                matcher.hitEnd = true;
+                // The addition of another char could wreck a boundary
+                matcher.requireEnd = true;
+            }
+            return ((left ^ right) ? (right ? LEFT : RIGHT) : NONE);
+        }
+
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            return (check(matcher, i, seq) & type) > 0
+                && next.match(matcher, i, seq);
+        }
+    }
+
+    /**
+     * Non spacing marks only count as word characters in bounds calculations
+     * if they have a base character.
+     */
+    static boolean hasBaseCharacter(int start, int i, CharSequence seq) {
+        for (int x = i; x >= start; x--) {
+            int ch = Character.codePointAt(seq, x);
+            if (Character.isLetterOrDigit(ch))
+                return true;
+            if (Character.getType(ch) == Character.NON_SPACING_MARK)
+                continue;
+            return false;
+        }
+        return false;
     }
 
     /**
@@ -1620,6 +2617,42 @@ public final class Pattern {
             this.optoSft = optoSft;
             this.next = next;
         }
+
+        boolean match(Matcher matcher, int i, CharSequence seq) {
+            int[] src = buffer;
+            int patternLength = src.length;
+            int last = matcher.to - patternLength;
+
+            // Loop over all possible match positions in text
+            NEXT:
+            while (i <= last) {
+                // Loop over pattern from right to left
+                for (int j = patternLength - 1; j >= 0; j--) {
+                    int ch = seq.charAt(i + j);
+                    if (ch != src[j]) {
+                        // Shift search to the right by the maximum of the
+                        // bad character shift and the good suffix shift
+                        i += Math.max(j + 1 - lastOcc[ch & 0x7F], optoSft[j]);
+                        continue NEXT;
+                    }
+                }
+                // Entire pattern matched starting at i
+                matcher.first = i;
+                boolean ret = next.match(matcher, i + patternLength, seq);
+                if (ret) {
+                    matcher.first = i;
+                    matcher.groups[0] = matcher.first;
+                    matcher.groups[1] = matcher.last;
+                    return true;
+                }
+                i++;
+            }
+            // BnM is only used as the leading node in the unanchored case,
+            // and it replaced its Start() which always searches to the end
+            // if it doesn't find what it's looking for, so hitEnd is true.
+            matcher.hitEnd = true;
+            return false;
+        }
     }
 
     @FunctionalInterface
@@ -1693,6 +2726,13 @@ public final class Pattern {
         return ch -> ch == c;
     }
 
+    /**
+     * A supplementary predicate of single
+     */
+    static CharPredicate SingleS(int c) {
+        return ch -> ch == c;
+    }
+
     /**
      * Unicode case insensitive matches a given Unicode character
      */
@@ -0,0 +1,157 @@
+package be.twofold.playground.pattern;
+
+import java.util.*;
+
+/**
+ * A bounded cache of compiled patterns, for expressions that are compiled over and over, like
+ * the ones users supply with every request.
+ *
+ * <pre>{@code
+ * PatternCache cache = new PatternCache(1000);
+ *
+ * Pattern pattern = cache.compile(request.filter(), true);
+ * }</pre>
+ *
+ * <p>Patterns are keyed by their expression and whether they ignore case. When the cache is
+ * full, the pattern that was used least recently is evicted. Patterns are immutable, so the
+ * same instance is handed out to every caller.
+ *
+ * <p>Instances are thread-safe. Compiling happens outside the lock, so a slow expression doesn't
+ * hold up lookups of other ones. Two threads that miss on the same expression at once can both
+ * compile it, in which case the first one to finish wins, and both count as a miss.
+ */
+public final class PatternCache {
+    private final int maximumSize;
+    private final Map<Key, Pattern> patterns;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * Creates a cache that holds at most {@code maximumSize} patterns.
+     *
+     * @param maximumSize The maximum number of patterns to keep
+     * @throws IllegalArgumentException If {@code maximumSize} is not positive
+     */
+    public PatternCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.patterns = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Pattern> eldest) {
+                if (size() > PatternCache.this.maximumSize) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the compiled pattern for the expression, compiling it if it isn't cached.
+     *
+     * @param regex The expression to be compiled
+     * @return the given regular expression compiled into a pattern
+     * @throws PatternSyntaxException If the expression's syntax is invalid
+     * @see Pattern#compile(String)
+     */
+    public Pattern compile(String regex) {
+        return compile(regex, false);
+    }
+
+    /**
+     * Returns the compiled pattern for the expression and flag, compiling it if it isn't cached.
+     * Expressions that don't compile aren't cached.
+     *
+     * @param regex           The expression to be compiled
+     * @param caseInsensitive Whether the pattern ignores case
+     * @return the given regular expression compiled into a pattern
+     * @throws PatternSyntaxException If the expression's syntax is invalid
+     * @see Pattern#compile(String, boolean)
+     */
+    public Pattern compile(String regex, boolean caseInsensitive) {
+        Key key = new Key(Objects.requireNonNull(regex, "regex must not be null"), caseInsensitive);
+        synchronized (patterns) {
+            Pattern pattern = patterns.get(key);
+            if (pattern != null) {
+                hitCount++;
+                return pattern;
+            }
+            missCount++;
+        }
+
+        Pattern compiled = Pattern.compile(regex, caseInsensitive);
+        synchronized (patterns) {
+            Pattern pattern = patterns.putIfAbsent(key, compiled);
+            return pattern != null ? pattern : compiled;
+        }
+    }
+
+    /**
+     * Returns the number of patterns in the cache.
+     */
+    public int size() {
+        synchronized (patterns) {
+            return patterns.size();
+        }
+    }
+
+    /**
+     * Returns the maximum number of patterns the cache holds.
+     */
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Returns how many times {@link #compile} found the pattern in the cache.
+     */
+    public long hitCount() {
+        synchronized (patterns) {
+            return hitCount;
+        }
+    }
+
+    /**
+     * Returns how many times {@link #compile} had to compile the pattern, including expressions
+     * that failed to compile.
+     */
+    public long missCount() {
+        synchronized (patterns) {
+            return missCount;
+        }
+    }
+
+    /**
+     * Returns how many patterns were evicted to make room for others.
+     */
+    public long evictionCount() {
+        synchronized (patterns) {
+            return evictionCount;
+        }
+    }
+
+    /**
+     * Removes all patterns from the cache. The counters keep counting.
+     */
+    public void clear() {
+        synchronized (patterns) {
+            patterns.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (patterns) {
+            return "PatternCache(size=" + patterns.size() + ", maximumSize=" + maximumSize
+                + ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + ")";
+        }
+    }
+
+    private record Key(String regex, boolean caseInsensitive) {
+    }
+}
@@ -0,0 +1,118 @@
+package be.twofold.playground.pattern;
+
+import be.twofold.playground.pattern.Pattern.*;
+
+import java.util.*;
+
+/**
+ * A set of patterns that are tested against an input together, reporting which of them are found
+ * in it, like {@link Pattern#asPredicate()} for each of them.
+ *
+ * <pre>{@code
+ * PatternSet filters = PatternSet.of(
+ *     Pattern.compile("ERROR"),
+ *     Pattern.compile("timeout after \\d+ms"),
+ *     Pattern.compile("user=(admin|root)\\b"));
+ *
+ * BitSet matched = filters.matches(line);
+ * }</pre>
+ *
+ * <p>Patterns that are plain literals are looked up together with Aho-Corasick. The others are
+ * combined into one automaton that runs as a lazily built DFA, so once the states a kind of input
+ * needs have been built, every character costs one lookup however many patterns there are. The
+ * few patterns that need backtracking are tested one by one, and so are all the others when the
+ * DFA needs too many states for an input.
+ *
+ * <p>Instances are immutable and can be shared between threads.
+ */
+public final class PatternSet {
+    private final List<Pattern> patterns;
+    private final AhoCorasick literals;
+    private final Dfa automaton;
+    private final int[] automatonIds;
+    private final int[] backtrackingIds;
+
+    private PatternSet(List<Pattern> patterns) {
+        this.patterns = patterns;
+
+        List<String> literals = new ArrayList<>();
+        int[] literalIds = new int[patterns.size()];
+        List<Nfa> nfas = new ArrayList<>();
+        int[] automatonIds = new int[patterns.size()];
+        int[] backtrackingIds = new int[patterns.size()];
+        int backtracking = 0;
+        for (int id = 0; id < patterns.size(); id++) {
+            Pattern pattern = patterns.get(id);
+            if (pattern.matchRoot instanceof Slice slice && slice.next == Pattern.lastAccept) {
+                literalIds[literals.size()] = id;
+                literals.add(new String(slice.buffer, 0, slice.buffer.length));
+                continue;
+            }
+            // Literals that ignore case don't get an automaton of their own
+            Nfa nfa = pattern.nfa != null ? pattern.nfa : Nfa.compile(pattern);
+            if (nfa != null) {
+                automatonIds[nfas.size()] = id;
+                nfas.add(nfa);
+            } else {
+                backtrackingIds[backtracking++] = id;
+            }
+        }
+
+        this.literals = literals.isEmpty() ? null : new AhoCorasick(literals, literalIds);
+        this.automaton = nfas.isEmpty() ? null : new Dfa(Nfa.union(nfas, automatonIds), Dfa.ALL);
+        this.automatonIds = Arrays.copyOf(automatonIds, nfas.size());
+        this.backtrackingIds = Arrays.copyOf(backtrackingIds, backtracking);
+    }
+
+    public static PatternSet of(Pattern... patterns) {
+        return of(Arrays.asList(patterns));
+    }
+
+    public static PatternSet of(Collection<Pattern> patterns) {
+        for (Pattern pattern : patterns) {
+            Objects.requireNonNull(pattern, "pattern must not be null");
+        }
+        return new PatternSet(List.copyOf(patterns));
+    }
+
+    /**
+     * Returns the patterns in this set, the indexes of which are used by {@link #matches}.
+     *
+     * @return an unmodifiable list of the patterns
+     */
+    public List<Pattern> patterns() {
+        return patterns;
+    }
+
+    /**
+     * Returns the indexes of the patterns that are found in the input, in a single pass for all
+     * patterns that don't need backtracking.
+     *
+     * @param input The character sequence to be tested
+     * @return the indexes of the patterns that match somewhere in the input
+     */
+    public BitSet matches(CharSequence input) {
+        BitSet ids = new BitSet(patterns.size());
+        if (literals != null) {
+            literals.matches(input, ids);
+        }
+        if (automaton != null && automaton.testAll(input, ids) == Dfa.UNKNOWN) {
+            for (int id : automatonIds) {
+                if (patterns.get(id).test(input, false)) {
+                    ids.set(id);
+                }
+            }
+        }
+        for (int id : backtrackingIds) {
+            if (patterns.get(id).test(input, false)) {
+                ids.set(id);
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public String toString() {
+        return "PatternSet" + patterns;
+    }
+}
@@ -0,0 +1,340 @@
+package be.twofold.playground.pattern;
+
+import be.twofold.playground.pattern.Pattern.*;
+
+import java.nio.*;
+import java.nio.charset.*;
+
+/**
+ * A literal that every match of a pattern contains, so a search can look for the literal first,
+ * and only run the pattern where a match is possible.
+ *
+ * <p>The literal is taken from the sequence of nodes that every match goes through, along with
+ * how far it can be from the start of the match. If that distance is bounded, only the positions
+ * in front of every occurrence are tried, otherwise the literal only rules out inputs that don't
+ * contain it.
+ *
+ * <p>Occurrences are found like memchr does: by scanning for the character of the literal that's
+ * least likely to show up in text, and comparing the rest of the literal there. On a
+ * {@link String} the scan is {@link String#indexOf(int, int, int)}, which the JVM vectorizes.
+ */
+final class Prefilter {
+    private static final int MIN_LENGTH = 2;
+    private static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    private final String literal;
+    private final int minOffset;
+    private final int maxOffset;
+    private final int rareIndex;
+    private final char rare;
+
+    // The literal in UTF-8, for inputs that aren't decoded, or null if it contains U+FFFD
+    private final byte[] utf8;
+    private final int utf8RareIndex;
+
+    private Prefilter(String literal, int minOffset, int maxOffset) {
+        this.literal = literal;
+        this.minOffset = minOffset;
+        this.maxOffset = maxOffset;
+
+        int rareIndex = 0;
+        for (int i = 1; i < literal.length(); i++) {
+            if (frequency(literal.charAt(i)) < frequency(literal.charAt(rareIndex))) {
+                rareIndex = i;
+            }
+        }
+        this.rareIndex = rareIndex;
+        this.rare = literal.charAt(rareIndex);
+
+        // Malformed input matches as U+FFFD, which can't be found in the raw bytes
+        this.utf8 = literal.indexOf('\uFFFD') < 0 ? literal.getBytes(StandardCharsets.UTF_8) : null;
+        int utf8RareIndex = 0;
+        for (int i = 1; utf8 != null && i < utf8.length; i++) {
+            if (frequency(utf8[i]) < frequency(utf8[utf8RareIndex])) {
+                utf8RareIndex = i;
+            }
+        }
+        this.utf8RareIndex = utf8RareIndex;
+    }
+
+    /**
+     * Finds the best literal in the pattern, or returns {@code null} if there is none.
+     */
+    static Prefilter of(Pattern pattern) {
+        Prefilter best = null;
+        int min = 0;
+        int max = 0;
+        for (Node node = pattern.matchRoot; node != null && !(node instanceof LastNode); node = after(node)) {
+            if (node instanceof Slice slice && slice.buffer.length >= MIN_LENGTH) {
+                Prefilter prefilter = new Prefilter(new String(slice.buffer, 0, slice.buffer.length), min, max);
+                if (best == null || prefilter.isBetterThan(best)) {
+                    best = prefilter;
+                }
+            }
+            int[] width = width(node);
+            if (width == null) {
+                break;
+            }
+            min = add(min, width[0]);
+            max = add(max, width[1]);
+        }
+        return best;
+    }
+
+    /**
+     * Searches for the first match at or after {@code from}, trying only the positions the
+     * literal allows.
+     */
+    boolean find(Matcher matcher, int from) {
+        Pattern pattern = matcher.pattern();
+        CharSequence seq = matcher.text;
+        int to = matcher.to;
+        int at = indexOf(seq, from + minOffset, to);
+        if (at < 0) {
+            matcher.hitEnd = true;
+            return false;
+        }
+        if (pattern.nfa != null) {
+            // The automaton is linear already, it only has to skip what can't match
+            return pattern.nfa.find(matcher, firstStart(seq, from, at, pattern.hasSupplementary));
+        }
+        if (maxOffset == UNBOUNDED) {
+            return pattern.root.match(matcher, from, seq);
+        }
+
+        for (int next = from; at >= 0; at = indexOf(seq, at + 1, to)) {
+            for (int i = Math.max(next, at - maxOffset), end = at - minOffset; i <= end; i++) {
+                if (pattern.hasSupplementary && i > from && isMidPair(seq, i)) {
+                    continue;
+                }
+                if (pattern.matchRoot.match(matcher, i, seq)) {
+                    matcher.first = i;
+                    matcher.groups[0] = matcher.first;
+                    matcher.groups[1] = matcher.last;
+                    return true;
+                }
+            }
+            next = Math.max(next, at - minOffset + 1);
+        }
+        matcher.hitEnd = true;
+        return false;
+    }
+
+    /**
+     * Returns the first position at or after {@code from} where a match could start, or -1 if
+     * the input doesn't contain the literal.
+     */
+    int start(CharSequence seq, int from, int to, boolean startS) {
+        int at = indexOf(seq, from + minOffset, to);
+        return at < 0 ? -1 : firstStart(seq, from, at, startS);
+    }
+
+    private int firstStart(CharSequence seq, int from, int at, boolean startS) {
+        if (maxOffset == UNBOUNDED || at - maxOffset <= from) {
+            return from;
+        }
+        int start = at - maxOffset;
+        return startS && isMidPair(seq, start) ? start + 1 : start;
+    }
+
+    /**
+     * Returns the first occurrence of the literal at or after {@code from} that ends before
+     * {@code to}, or -1 if there is none.
+     */
+    int indexOf(CharSequence seq, int from, int to) {
+        int length = literal.length();
+        int last = to - length;
+        if (from > last) {
+            return -1;
+        }
+        if (seq instanceof String string) {
+            for (int i = from + rareIndex; ; i++) {
+                i = string.indexOf(rare, i, last + rareIndex + 1);
+                if (i < 0) {
+                    return -1;
+                }
+                if (string.startsWith(literal, i - rareIndex)) {
+                    return i - rareIndex;
+                }
+            }
+        }
+        for (int i = from + rareIndex, end = last + rareIndex; i <= end; i++) {
+            if (seq.charAt(i) == rare && regionMatches(seq, i - rareIndex)) {
+                return i - rareIndex;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Whether the UTF-8 encoded bytes between the position and the limit of the buffer contain
+     * the literal. A lead byte never shows up inside another sequence, so a match of the bytes is
+     * an occurrence of the literal, even in malformed input. A literal with U+FFFD in it is
+     * always assumed to occur.
+     */
+    boolean occursIn(ByteBuffer buffer) {
+        if (utf8 == null) {
+            return true;
+        }
+        byte rare = utf8[utf8RareIndex];
+        for (int i = buffer.position() + utf8RareIndex, end = buffer.limit() - utf8.length + utf8RareIndex; i <= end; i++) {
+            if (buffer.get(i) == rare && regionMatches(buffer, i - utf8RareIndex)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean regionMatches(ByteBuffer buffer, int offset) {
+        for (int i = 0; i < utf8.length; i++) {
+            if (buffer.get(offset + i) != utf8[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean regionMatches(CharSequence seq, int offset) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (seq.charAt(offset + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isBetterThan(Prefilter other) {
+        // Knowing where the match starts is worth more than a longer literal
+        if ((maxOffset == UNBOUNDED) != (other.maxOffset == UNBOUNDED)) {
+            return maxOffset != UNBOUNDED;
+        }
+        return literal.length() > other.literal.length();
+    }
+
+    private static boolean isMidPair(CharSequence seq, int i) {
+        return Character.isLowSurrogate(seq.charAt(i)) && Character.isHighSurrogate(seq.charAt(i - 1));
+    }
+
+    /**
+     * The next node that every match goes through.
+     */
+    private static Node after(Node node) {
+        if (node instanceof Branch branch) {
+            return branch.conn.next;
+        }
+        if (node instanceof Prolog prolog) {
+            return prolog.loop.next;
+        }
+        return node.next;
+    }
+
+    /**
+     * Returns the minimum and maximum number of chars matched by the nodes from {@code node} up
+     * to {@code stop}, or {@code null} if that's not known.
+     */
+    private static int[] width(Node node, Node stop) {
+        int min = 0;
+        int max = 0;
+        for (; node != stop; node = after(node)) {
+            int[] width = node == null ? null : width(node);
+            if (width == null) {
+                return null;
+            }
+            min = add(min, width[0]);
+            max = add(max, width[1]);
+        }
+        return new int[]{min, max};
+    }
+
+    /**
+     * Returns the minimum and maximum number of chars matched by a single node, where a branch
+     * or a loop counts as one, or {@code null} if that's not known.
+     */
+    private static int[] width(Node node) {
+        if (node instanceof Slice slice) {
+            return new int[]{slice.buffer.length, slice.buffer.length};
+        }
+        if (node instanceof SliceU slice) {
+            return new int[]{slice.buffer.length, multiply(slice.buffer.length, 2)};
+        }
+        if (node instanceof CharProperty property) {
+            return new int[]{1, property.predicate instanceof BmpCharPredicate ? 1 : 2};
+        }
+        if (node instanceof CharPropertyGreedy greedy) {
+            return new int[]{greedy.cMin, UNBOUNDED};
+        }
+        if (node instanceof LineEnding) {
+            return new int[]{1, 2};
+        }
+        if (node instanceof Curly curly) {
+            int[] atom = width(curly.atom);
+            return atom == null ? null : new int[]{multiply(atom[0], curly.cmin), multiply(atom[1], curly.cmax)};
+        }
+        if (node instanceof Ques ques) {
+            int[] atom = width(ques.atom);
+            return atom == null ? null : new int[]{0, atom[1]};
+        }
+        if (node instanceof Branch branch) {
+            int min = UNBOUNDED;
+            int max = 0;
+            for (int n = 0; n < branch.size; n++) {
+                int[] width = branch.atoms[n] == null ? new int[2] : width(branch.atoms[n], branch.conn);
+                if (width == null) {
+                    return null;
+                }
+                min = Math.min(min, width[0]);
+                max = Math.max(max, width[1]);
+            }
+            return new int[]{min, max};
+        }
+        if (node instanceof Prolog prolog) {
+            Loop loop = prolog.loop;
+            int[] body = width(loop.body, loop);
+            return body == null ? null : new int[]{multiply(body[0], loop.cmin), multiply(body[1], loop.cmax)};
+        }
+        if (node instanceof GroupHead || node instanceof GroupTail || node instanceof Begin
+            || node instanceof End || node instanceof Dollar || node instanceof Bound) {
+            return new int[2];
+        }
+        return null;
+    }
+
+    private static int add(int a, int b) {
+        return a == UNBOUNDED || b == UNBOUNDED ? UNBOUNDED : (int) Math.min((long) a + b, UNBOUNDED);
+    }
+
+    private static int multiply(int a, int b) {
+        if (a == 0 || b == 0) {
+            return 0;
+        }
+        return a == UNBOUNDED || b == UNBOUNDED ? UNBOUNDED : (int) Math.min((long) a * b, UNBOUNDED);
+    }
+
+    private static int frequency(byte b) {
+        // The bytes of a non-ASCII character are as rare as the character
+        return frequency((char) (b & 0xFF));
+    }
+
+    /**
+     * A rough rank of how often a character shows up in text and logs, higher is more common.
+     */
+    private static int frequency(char c) {
+        if (c == ' ') {
+            return 255;
+        }
+        int letter = "etaoinsrhldcumfpgwybvkxjqz".indexOf(c);
+        if (letter >= 0) {
+            return 250 - letter * 4;
+        }
+        if (c >= '0' && c <= '9') {
+            return 160;
+        }
+        if (".,:;-_/=\"'()[]".indexOf(c) >= 0) {
+            return 140;
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return 100;
+        }
+        return c < 128 ? 50 : 10;
+    }
+}
@@ -0,0 +1,117 @@
+package be.twofold.playground.pattern;
+
+import be.twofold.playground.pattern.Pattern.*;
+
+import java.nio.*;
+
+/**
+ * Reads code points from UTF-8 encoded bytes in place, so the automaton can run over them without
+ * decoding them to a string first.
+ *
+ * <p>Positions are byte offsets in the buffer. Malformed input reads as one U+FFFD per maximal
+ * malformed subpart, which is what {@code new String(bytes, UTF_8)} produces, so a pattern sees
+ * the same code points either way.
+ */
+final class Utf8 {
+    static final int REPLACEMENT = '\uFFFD';
+
+    private Utf8() {
+    }
+
+    /**
+     * Returns the code point that starts at {@code i}, with its length in bytes in the upper bits,
+     * see {@link #length(long)} and {@link #codePoint(long)}.
+     */
+    static long decode(ByteBuffer buffer, int i, int to) {
+        int b0 = buffer.get(i);
+        if (b0 >= 0) {
+            return pack(b0, 1);
+        }
+        b0 &= 0xFF;
+        if (b0 < 0xC2) {
+            // A continuation byte, or the lead byte of an overlong encoding
+            return pack(REPLACEMENT, 1);
+        }
+        if (b0 < 0xE0) {
+            if (i + 1 >= to || !isContinuation(buffer.get(i + 1))) {
+                return pack(REPLACEMENT, 1);
+            }
+            return pack((b0 & 0x1F) << 6 | buffer.get(i + 1) & 0x3F, 2);
+        }
+        if (b0 < 0xF0) {
+            // The second byte is limited to rule out overlong encodings
+            if (i + 1 >= to || !inRange(buffer.get(i + 1), b0 == 0xE0 ? 0xA0 : 0x80, 0xBF)) {
+                return pack(REPLACEMENT, 1);
+            }
+            if (i + 2 >= to || !isContinuation(buffer.get(i + 2))) {
+                return pack(REPLACEMENT, 2);
+            }
+            int ch = (b0 & 0x0F) << 12 | (buffer.get(i + 1) & 0x3F) << 6 | buffer.get(i + 2) & 0x3F;
+            // An encoded surrogate is replaced as a whole
+            return pack(Character.isSurrogate((char) ch) ? REPLACEMENT : ch, 3);
+        }
+        if (b0 < 0xF5) {
+            // The second byte is limited to rule out overlong encodings and values above U+10FFFF
+            int min = b0 == 0xF0 ? 0x90 : 0x80;
+            int max = b0 == 0xF4 ? 0x8F : 0xBF;
+            if (i + 1 >= to || !inRange(buffer.get(i + 1), min, max)) {
+                return pack(REPLACEMENT, 1);
+            }
+            if (i + 2 >= to || !isContinuation(buffer.get(i + 2))) {
+                return pack(REPLACEMENT, 2);
+            }
+            if (i + 3 >= to || !isContinuation(buffer.get(i + 3))) {
+                return pack(REPLACEMENT, 3);
+            }
+            return pack((b0 & 0x07) << 18 | (buffer.get(i + 1) & 0x3F) << 12
+                | (buffer.get(i + 2) & 0x3F) << 6 | buffer.get(i + 3) & 0x3F, 4);
+        }
+        return pack(REPLACEMENT, 1);
+    }
+
+    static int codePoint(long decoded) {
+        return (int) decoded;
+    }
+
+    static int length(long decoded) {
+        return (int) (decoded >>> 32);
+    }
+
+    /**
+     * The condition of {@link Dollar}: at the end, or before a line terminator at the end.
+     */
+    static boolean dollar(ByteBuffer buffer, int i, int from, int to) {
+        if (i == to) {
+            return true;
+        }
+        if (to - i > 3) {
+            return false;
+        }
+        if (to - i == 2 && buffer.get(i) == '\r' && buffer.get(i + 1) == '\n') {
+            return true;
+        }
+        long decoded = decode(buffer, i, to);
+        if (i + length(decoded) != to) {
+            return false;
+        }
+        int ch = codePoint(decoded);
+        if (ch == '\n') {
+            // No match between \r\n
+            return i == from || buffer.get(i - 1) != '\r';
+        }
+        return ch == '\r' || ch == '\u0085' || (ch | 1) == '\u2029';
+    }
+
+    private static boolean isContinuation(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+
+    private static boolean inRange(byte b, int min, int max) {
+        int value = b & 0xFF;
+        return value >= min && value <= max;
+    }
+
+    private static long pack(int codePoint, int length) {
+        return (long) length << 32 | codePoint;
+    }
+}
@@ -0,0 +1,267 @@
+package be.twofold.playground;
+
+import be.twofold.playground.json.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.*;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class JsonReaderBench {
+
+    private static final int CORPUS_SIZE = 1024 * 1024;
+    private static final com.fasterxml.jackson.core.JsonFactory JACKSON = new com.fasterxml.jackson.core.JsonFactory();
+
+    @Param({"deepNesting", "smallObjects", "longStrings", "numericArrays", "escapes"})
+    private String corpus;
+
+    private String json;
+    private byte[] bytes;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+            .include(JsonReaderBench.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        var random = new Random(0);
+        var builder = new StringBuilder("[");
+        while (builder.length() < CORPUS_SIZE) {
+            if (builder.length() > 1) {
+                builder.append(',');
+            }
+            switch (corpus) {
+                case "deepNesting" -> appendDeepNesting(builder, random);
+                case "smallObjects" -> appendSmallObject(builder, random);
+                case "longStrings" -> appendLongString(builder, random);
+                case "numericArrays" -> appendNumericArray(builder, random);
+                case "escapes" -> appendEscapes(builder, random);
+                default -> throw new IllegalArgumentException(corpus);
+            }
+        }
+        json = builder.append(']').toString();
+        bytes = json.getBytes(StandardCharsets.UTF_8);
+
+        // All readers have to agree, or the comparison means nothing
+        long expected = playground();
+        if (gson() != expected || jackson() != expected || playgroundBytes() != expected || jacksonBytes() != expected) {
+            throw new IllegalStateException("Readers disagree on " + corpus);
+        }
+    }
+
+    @Benchmark
+    public long playground() throws IOException {
+        try (var reader = new be.twofold.playground.json.JsonReader(new StringReader(json))) {
+            return walk(reader);
+        }
+    }
+
+    @Benchmark
+    public long playgroundBytes() throws IOException {
+        try (var reader = new JsonByteReader(bytes)) {
+            return walk(reader);
+        }
+    }
+
+    @Benchmark
+    public long gson() throws IOException {
+        try (var reader = new com.google.gson.stream.JsonReader(new StringReader(json))) {
+            return walk(reader);
+        }
+    }
+
+    @Benchmark
+    public long jackson() throws IOException {
+        try (var parser = JACKSON.createParser(new StringReader(json))) {
+            return walk(parser);
+        }
+    }
+
+    @Benchmark
+    public long jacksonBytes() throws IOException {
+        try (var parser = JACKSON.createParser(bytes)) {
+            return walk(parser);
+        }
+    }
+
+    private static long walk(be.twofold.playground.json.JsonReader reader) throws IOException {
+        long hash = 0;
+        int depth = 0;
+        do {
+            switch (reader.peek()) {
+                case BEGIN_ARRAY -> {
+                    reader.beginArray();
+                    depth++;
+                }
+                case END_ARRAY -> {
+                    reader.endArray();
+                    depth--;
+                }
+                case BEGIN_OBJECT -> {
+                    reader.beginObject();
+                    depth++;
+                }
+                case END_OBJECT -> {
+                    reader.endObject();
+                    depth--;
+                }
+                case NAME -> hash += reader.nextName().length();
+                case STRING -> hash += reader.nextString().length();
+                case NUMBER -> hash += (long) reader.nextDouble();
+                case BOOLEAN -> hash += reader.nextBoolean() ? 1 : 0;
+                case NULL -> reader.nextNull();
+                default -> throw new IllegalStateException();
+            }
+        } while (depth > 0);
+        return hash;
+    }
+
+    private static long walk(JsonByteReader reader) throws IOException {
+        long hash = 0;
+        int depth = 0;
+        do {
+            switch (reader.peek()) {
+                case BEGIN_ARRAY -> {
+                    reader.beginArray();
+                    depth++;
+                }
+                case END_ARRAY -> {
+                    reader.endArray();
+                    depth--;
+                }
+                case BEGIN_OBJECT -> {
+                    reader.beginObject();
+                    depth++;
+                }
+                case END_OBJECT -> {
+                    reader.endObject();
+                    depth--;
+                }
+                case NAME -> hash += reader.nextName().length();
+                case STRING -> hash += reader.nextString().length();
+                case NUMBER -> hash += (long) reader.nextDouble();
+                case BOOLEAN -> hash += reader.nextBoolean() ? 1 : 0;
+                case NULL -> reader.nextNull();
+                default -> throw new IllegalStateException();
+            }
+        } while (depth > 0);
+        return hash;
+    }
+
+    private static long walk(com.google.gson.stream.JsonReader reader) throws IOException {
+        long hash = 0;
+        int depth = 0;
+        do {
+            switch (reader.peek()) {
+                case BEGIN_ARRAY -> {
+                    reader.beginArray();
+                    depth++;
+                }
+                case END_ARRAY -> {
+                    reader.endArray();
+                    depth--;
+                }
+                case BEGIN_OBJECT -> {
+                    reader.beginObject();
+                    depth++;
+                }
+                case END_OBJECT -> {
+                    reader.endObject();
+                    depth--;
+                }
+                case NAME -> hash += reader.nextName().length();
+                case STRING -> hash += reader.nextString().length();
+                case NUMBER -> hash += (long) reader.nextDouble();
+                case BOOLEAN -> hash += reader.nextBoolean() ? 1 : 0;
+                case NULL -> reader.nextNull();
+                default -> throw new IllegalStateException();
+            }
+        } while (depth > 0);
+        return hash;
+    }
+
+    private static long walk(com.fasterxml.jackson.core.JsonParser parser) throws IOException {
+        long hash = 0;
+        for (com.fasterxml.jackson.core.JsonToken token; (token = parser.nextToken()) != null; ) {
+            switch (token) {
+                case FIELD_NAME, VALUE_STRING -> hash += parser.getText().length();
+                case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> hash += (long) parser.getDoubleValue();
+                case VALUE_TRUE -> hash += 1;
+                default -> {
+                }
+            }
+        }
+        return hash;
+    }
+
+    private static void appendDeepNesting(StringBuilder builder, Random random) {
+        int depth = 100 + random.nextInt(100);
+        for (int i = 0; i < depth; i++) {
+            builder.append(i % 2 == 0 ? "{\"n\":" : "[");
+        }
+        builder.append(random.nextInt(1000));
+        for (int i = depth - 1; i >= 0; i--) {
+            builder.append(i % 2 == 0 ? '}' : ']');
+        }
+    }
+
+    private static void appendSmallObject(StringBuilder builder, Random random) {
+        builder
+            .append("{\"id\":").append(random.nextInt(1_000_000))
+            .append(",\"name\":\"user").append(random.nextInt(10_000)).append('"')
+            .append(",\"active\":").append(random.nextBoolean())
+            .append(",\"score\":").append(random.nextInt(10_000) / 100.0)
+            .append(",\"parent\":null")
+            .append(",\"tags\":[\"a\",\"b\"]}");
+    }
+
+    private static void appendLongString(StringBuilder builder, Random random) {
+        builder.append('"');
+        for (int i = 1000 + random.nextInt(9000); i > 0; i--) {
+            // Mostly ASCII, with the occasional two and three byte sequence
+            int kind = random.nextInt(100);
+            builder.append(kind == 0 ? 'é' : kind == 1 ? '€' : (char) ('a' + random.nextInt(26)));
+        }
+        builder.append('"');
+    }
+
+    private static void appendNumericArray(StringBuilder builder, Random random) {
+        builder.append('[');
+        for (int i = 0; i < 100; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            switch (random.nextInt(3)) {
+                case 0 -> builder.append(random.nextLong());
+                case 1 -> builder.append(random.nextGaussian() * 1000);
+                default -> builder.append(random.nextInt(100_000) / 1000.0).append("e-").append(random.nextInt(10));
+            }
+        }
+        builder.append(']');
+    }
+
+    private static void appendEscapes(StringBuilder builder, Random random) {
+        String[] escapes = {"\\n", "\\t", "\\\"", "\\\\", "\\/", "\\u00e9", "\\ud83d\\ude00"};
+        builder.append('"');
+        for (int i = 0; i < 100; i++) {
+            builder.append(random.nextBoolean() ? escapes[random.nextInt(escapes.length)] : "text");
+        }
+        builder.append('"');
+    }
+
+}
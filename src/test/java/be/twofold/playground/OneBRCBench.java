@@ -0,0 +1,69 @@
+package be.twofold.playground;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class OneBRCBench {
+
+    private static final String[] STATIONS = {
+        "Abha", "Bulawayo", "Cracow", "Hamburg", "Istanbul", "Palembang", "St. John's", "Yaoundé", "Zürich",
+    };
+
+    private ByteBuffer buffer;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+            .include(OneBRCBench.class.getSimpleName())
+            .build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void setup() {
+        var random = new Random(0);
+        var builder = new StringBuilder();
+        while (builder.length() < 1024 * 1024) {
+            int value = random.nextInt(1999) - 999;
+            builder
+                .append(STATIONS[random.nextInt(STATIONS.length)]).append(';')
+                .append(value < 0 ? "-" : "").append(Math.abs(value) / 10).append('.').append(Math.abs(value) % 10)
+                .append('\n');
+        }
+        buffer = ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.UTF_8))
+            .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Benchmark
+    public OneBRC.StationTable scalar() {
+        var table = new OneBRC.StationTable();
+        int limit = buffer.limit();
+        for (int offset = 0; offset < limit; ) {
+            offset = OneBRC.parseLineScalar(buffer, offset, limit, table);
+        }
+        return table;
+    }
+
+    @Benchmark
+    public OneBRC.StationTable swar() {
+        var table = new OneBRC.StationTable();
+        int limit = buffer.limit();
+        for (int offset = 0; offset < limit; ) {
+            offset = OneBRC.parseLine(buffer, offset, table);
+        }
+        return table;
+    }
+
+}
@@ -0,0 +1,178 @@
+package be.twofold.playground;
+
+import be.twofold.playground.pattern.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.*;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class PatternBench {
+
+    private static final int CORPUS_SIZE = 256 * 1024;
+    private static final String[] WORDS = {
+        "request", "handled", "user", "session", "cache", "timeout", "retry", "connection", "école", "Straße",
+    };
+
+    @Param({"literal", "alternation", "classRuns", "caseInsensitive", "pathological"})
+    private String workload;
+
+    private String regex;
+    private boolean caseInsensitive;
+    private String text;
+    private String[] lines;
+    private byte[][] lineBytes;
+
+    private Pattern pattern;
+    private java.util.regex.Pattern jdkPattern;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+            .include(PatternBench.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void setup() {
+        var random = new Random(0);
+        switch (workload) {
+            case "literal" -> {
+                regex = "connection reset";
+                text = logLines(random, "connection reset");
+            }
+            case "alternation" -> {
+                regex = "(timeout|refused|reset|unreachable) after \\d+ms";
+                text = logLines(random, "refused after 250ms");
+            }
+            case "classRuns" -> {
+                regex = "[\\p{L}_][\\p{L}\\p{Nd}_]{7,}\\s";
+                text = logLines(random, "Verbindungsabbruch ");
+            }
+            case "caseInsensitive" -> {
+                regex = "ÉCOLE CONNECTION";
+                caseInsensitive = true;
+                text = logLines(random, "École Connection");
+            }
+            case "pathological" -> {
+                // Catastrophic for a backtracking engine: every way of splitting a row into eleven
+                // fields is tried before giving up on it. Without MULTILINE, find only tries the first row
+                regex = "^(.*?,){11}P";
+                text = csvRows(random);
+            }
+            default -> throw new IllegalArgumentException(workload);
+        }
+        lines = text.split("\n");
+        lineBytes = Arrays.stream(lines)
+            .map(line -> line.getBytes(StandardCharsets.UTF_8))
+            .toArray(byte[][]::new);
+
+        pattern = Pattern.compile(regex, caseInsensitive);
+        jdkPattern = java.util.regex.Pattern.compile(regex, caseInsensitive
+            ? java.util.regex.Pattern.CASE_INSENSITIVE | java.util.regex.Pattern.UNICODE_CASE
+            : 0);
+
+        // Both engines have to agree, or the comparison means nothing
+        long expected = jdkFind();
+        if (find() != expected || predicate() != jdkPredicate() || bytes() != jdkPredicate()) {
+            throw new IllegalStateException("Engines disagree on " + workload);
+        }
+    }
+
+    @Benchmark
+    public long find() {
+        var matcher = pattern.matcher(text);
+        long hash = 0;
+        while (matcher.find()) {
+            hash += matcher.start() + 1;
+        }
+        return hash;
+    }
+
+    @Benchmark
+    public long jdkFind() {
+        var matcher = jdkPattern.matcher(text);
+        long hash = 0;
+        while (matcher.find()) {
+            hash += matcher.start() + 1;
+        }
+        return hash;
+    }
+
+    @Benchmark
+    public int predicate() {
+        var predicate = pattern.asPredicate();
+        int count = 0;
+        for (String line : lines) {
+            if (predicate.test(line)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int jdkPredicate() {
+        var predicate = jdkPattern.asPredicate();
+        int count = 0;
+        for (String line : lines) {
+            if (predicate.test(line)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int bytes() {
+        int count = 0;
+        for (byte[] line : lineBytes) {
+            if (pattern.find(line)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String logLines(Random random, String needle) {
+        var builder = new StringBuilder();
+        while (builder.length() < CORPUS_SIZE) {
+            builder.append("2024-05-").append(10 + random.nextInt(20))
+                .append(" INFO [worker-").append(random.nextInt(16)).append("] ");
+            for (int i = 3 + random.nextInt(8); i > 0; i--) {
+                builder.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            builder.append("in ").append(random.nextInt(1000)).append("ms");
+            if (random.nextInt(50) == 0) {
+                builder.append(' ').append(needle);
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static String csvRows(Random random) {
+        var builder = new StringBuilder();
+        for (int row = 0; row < 32; row++) {
+            for (int field = 0; field < 16; field++) {
+                // Only every other row has a twelfth field that starts with a P
+                builder.append(field == 11 && row % 2 == 0 ? 'P' : 'Q');
+                builder.append(random.nextInt(1000)).append(',');
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,46 @@
+package be.twofold.playground.pattern;
+
+import org.junit.jupiter.api.*;
+
+import java.nio.charset.*;
+
+import static org.assertj.core.api.Assertions.*;
+
+class TestPatternLineEnding {
+
+    private static final String[] PATTERNS = {
+        "\\R\\n", "\\R{2}", "(\\R){2}", "(\\R)+\\n", "((\\R))+\\n", "(\\R)*?\\n", "(\\R)?\\n",
+        "(\\R|x)\\n", "(x\\R|\\R)+\\n", "(\\R\\n)+", "(\\R\\R{2}\\r)+?\\R", "(a|\\R)*$",
+    };
+
+    private static final String[] INPUTS = {"", "\r", "\n", "\r\n", "\r\n\n", "\r\r\n", "\n\r\n", "x\r\n\n"};
+
+    @Test
+    void testSameAsJavaUtilRegex() {
+        for (String regex : PATTERNS) {
+            Pattern pattern = Pattern.compile(regex);
+            java.util.regex.Pattern expected = java.util.regex.Pattern.compile(regex);
+            for (String input : INPUTS) {
+                boolean find = expected.matcher(input).find();
+                boolean matches = expected.matcher(input).matches();
+                String description = regex + " on " + input.replace("\r", "\\r").replace("\n", "\\n");
+
+                assertThat(pattern.matcher(input).find()).as(description).isEqualTo(find);
+                assertThat(pattern.matcher(input).matches()).as(description).isEqualTo(matches);
+                assertThat(pattern.asPredicate().test(input)).as(description).isEqualTo(find);
+                assertThat(pattern.asMatchPredicate().test(input)).as(description).isEqualTo(matches);
+                assertThat(pattern.find(input.getBytes(StandardCharsets.UTF_8))).as(description).isEqualTo(find);
+                assertThat(PatternSet.of(pattern).matches(input).get(0)).as(description).isEqualTo(find);
+            }
+        }
+    }
+
+    @Test
+    void testPatternSetWithRepeatedLineEnding() {
+        String regex = "$(\\R){2,}((K?\\w{2,})*?){0,2}?";
+        PatternSet set = PatternSet.of(Pattern.compile(regex, true), Pattern.compile("zzz"));
+
+        assertThat(set.matches("1kababa.\r\n")).isEmpty();
+    }
+
+}